@@ -0,0 +1,83 @@
+//References:
+//[1] P. Barrett, "Implementing the Rivest Shamir and Adleman Public Key Encryption Algorithm on a Standard Digital Signal Processor," CRYPTO'86.
+
+
+/*
+* Barrett reduction for a fixed modulus N of k bits.
+*
+* With the precomputed constant mu = floor(2^(2k) / N), a product x < N^2 is
+* reduced by
+*
+*      q = ( (x >> (k-1)) * mu ) >> (k+1)
+*      r = x - q*N,  followed by at most two subtractions of N
+*
+* i.e. two multiplications instead of a long division. For the repeated
+* multiplications mod n^2 of multi-exponentiation this is about two to
+* three times cheaper than BigInteger.mod.
+*
+*/
+
+//used for mathematical operation
+import java.math.BigInteger;
+
+
+public class BarrettReduction {
+
+	private final BigInteger modulus, mu;
+
+	private final int k;
+
+
+	/**
+	* @param modulusVal positive modulus N
+	*/
+
+	public BarrettReduction(BigInteger modulusVal) {
+
+		modulus = modulusVal;
+		k = modulus.bitLength();
+		mu = BigInteger.ONE.shiftLeft(2 * k).divide(modulus);
+	}
+
+
+	/**
+	* Reduces x mod N.
+	* @param x non-negative value below N^2
+	* @return x mod N
+	*/
+
+	public BigInteger reduce(BigInteger x) {
+
+		if (x.bitLength() < k)
+			return x;
+
+		BigInteger q = x.shiftRight(k - 1).multiply(mu).shiftRight(k + 1);
+		BigInteger r = x.subtract(q.multiply(modulus));
+
+		while (r.compareTo(modulus) >= 0)
+			r = r.subtract(modulus);
+
+		return r;
+	}
+
+
+	/**
+	* @param a value in [0, N)
+	* @param b value in [0, N)
+	* @return a*b mod N
+	*/
+
+	public BigInteger multiply(BigInteger a, BigInteger b) {
+
+		return reduce(a.multiply(b));
+	}
+
+
+	/**
+	* @return the modulus N
+	*/
+
+	public BigInteger getModulus() {
+		return modulus;
+	}
+}
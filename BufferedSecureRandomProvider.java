@@ -0,0 +1,106 @@
+/*
+* Default RandomnessProvider: one SecureRandom DRBG per thread.
+*
+* Every thread owns its generator, so concurrent encryptions never contend
+* on a shared lock, and every generator fills a buffer of BUFFER_SIZE bytes at
+* once, so that a randomizer costs an array copy instead of a call into the
+* DRBG.
+*
+*/
+
+//used for mathematical operation
+import java.math.BigInteger;
+
+//for generating random number
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.Random;
+
+
+public final class BufferedSecureRandomProvider implements RandomnessProvider {
+
+	static final BufferedSecureRandomProvider INSTANCE = new BufferedSecureRandomProvider();
+
+	/**
+	* bytes drawn from the DRBG at once.
+	*/
+
+	private static final int BUFFER_SIZE = 4096;
+
+
+	private final ThreadLocal<State> state = ThreadLocal.withInitial(State::new);
+
+
+	private BufferedSecureRandomProvider() {
+	}
+
+
+	@Override
+	public BigInteger nextBigInteger(int bits) {
+
+		if (bits < 0)
+			throw new IllegalArgumentException("number of bits must be non-negative");
+
+		byte[] bytes = new byte[(bits + 7) / 8];
+		state.get().nextBytes(bytes);
+
+		//clear the bits above the requested length
+		if (bytes.length > 0)
+			bytes[0] &= (byte) (0xFF >>> (8 * bytes.length - bits));
+
+		return new BigInteger(1, bytes);
+	}
+
+
+	@Override
+	public Random random() {
+
+		return state.get().random;
+	}
+
+
+	/**
+	* DRBG and buffer of one thread.
+	*/
+
+	private static final class State {
+
+		final SecureRandom random = newDrbg();
+
+		final byte[] buffer = new byte[BUFFER_SIZE];
+
+		int position = BUFFER_SIZE;
+
+
+		void nextBytes(byte[] out) {
+
+			int filled = 0;
+			while (filled < out.length) {
+
+				if (position == BUFFER_SIZE) {
+					random.nextBytes(buffer);
+					position = 0;
+				}
+
+				int count = Math.min(out.length - filled, BUFFER_SIZE - position);
+				System.arraycopy(buffer, position, out, filled, count);
+
+				//never hand out the same bytes twice
+				java.util.Arrays.fill(buffer, position, position + count, (byte) 0);
+
+				position += count;
+				filled += count;
+			}
+		}
+
+
+		private static SecureRandom newDrbg() {
+
+			try {
+				return SecureRandom.getInstance("DRBG");
+			} catch (NoSuchAlgorithmException e) {
+				return new SecureRandom();
+			}
+		}
+	}
+}
@@ -0,0 +1,242 @@
+/*
+* Fixed-width binary encoding of ciphertexts.
+*
+* A ciphertext c < n^2 is stored as exactly width = ceil(|n^2| / 8) bytes,
+* unsigned big-endian and left-padded with zeros, so that record i of a file
+* starts at HEADER_SIZE + i * width and can be read without parsing.
+*
+* Header (HEADER_SIZE = 48 bytes, big-endian):
+*
+*   offset  size  field
+*        0     4  MAGIC ("PCT1")
+*        4     1  VERSION
+*        5     1  scheme, 0 = STANDARD (Encryption), 1 = MODIFIED (mEncryption)
+*        6     2  reserved, zero
+*        8     4  width of one ciphertext in bytes
+*       12    32  key fingerprint, see Paillier.Fingerprint()
+*       44     4  reserved, zero
+*
+*/
+
+//used for mathematical operation
+import java.math.BigInteger;
+
+//binary buffers
+import java.nio.ByteBuffer;
+
+//used for Arrays implementation
+import java.util.Arrays;
+
+
+public class CiphertextCodec {
+
+	public static final int MAGIC = 0x50435431;
+
+	public static final byte VERSION = 1;
+
+	public static final int HEADER_SIZE = 48;
+
+	private static final int FINGERPRINT_SIZE = 32;
+
+
+	/**
+	* scheme the ciphertexts were produced with; they must be decrypted
+	* with the matching Decryption or mDecryption.
+	*/
+
+	public enum Scheme {
+		STANDARD, MODIFIED
+	}
+
+
+	private final Scheme scheme;
+
+	private final byte[] fingerprint;
+
+	private final BigInteger nsquare;
+
+	private final int width;
+
+
+	/**
+	* @param key Paillier key of the ciphertexts
+	* @param schemeVal scheme of the ciphertexts
+	*/
+
+	public CiphertextCodec(Paillier key, Scheme schemeVal) {
+
+		scheme = schemeVal;
+		fingerprint = key.Fingerprint();
+		nsquare = key.nsquare;
+		width = (nsquare.bitLength() + 7) / 8;
+	}
+
+
+	/**
+	* Writes the ciphertext into out[offset, offset + width).
+	* @param c ciphertext, 0 <= c < n^2
+	* @param out destination array
+	* @param offset start of the record
+	*/
+
+	public void encode(BigInteger c, byte[] out, int offset) {
+
+		if (c.signum() < 0 || c.compareTo(nsquare) >= 0)
+			throw new IllegalArgumentException("ciphertext is not in [0, n^2)");
+
+		//toByteArray may add a leading sign byte, which is zero here
+		byte[] bytes = c.toByteArray();
+		int skip = bytes.length > width ? bytes.length - width : 0;
+		int length = bytes.length - skip;
+
+		Arrays.fill(out, offset, offset + width - length, (byte) 0);
+		System.arraycopy(bytes, skip, out, offset + width - length, length);
+	}
+
+
+	/**
+	* @param c ciphertext, 0 <= c < n^2
+	* @return the width-byte record of c
+	*/
+
+	public byte[] encode(BigInteger c) {
+
+		byte[] out = new byte[width];
+		encode(c, out, 0);
+		return out;
+	}
+
+
+	/**
+	* Writes the ciphertext at the current position of out and advances it.
+	* @param c ciphertext, 0 <= c < n^2
+	* @param out destination buffer with at least width bytes remaining
+	*/
+
+	public void encode(BigInteger c, ByteBuffer out) {
+
+		if (c.signum() < 0 || c.compareTo(nsquare) >= 0)
+			throw new IllegalArgumentException("ciphertext is not in [0, n^2)");
+
+		byte[] bytes = c.toByteArray();
+		int skip = bytes.length > width ? bytes.length - width : 0;
+		int length = bytes.length - skip;
+
+		for (int i = length; i < width; i++)
+			out.put((byte) 0);
+		out.put(bytes, skip, length);
+	}
+
+
+	/**
+	* @param in source array
+	* @param offset start of the record
+	* @return the ciphertext stored in in[offset, offset + width)
+	*/
+
+	public BigInteger decode(byte[] in, int offset) {
+
+		return new BigInteger(1, Arrays.copyOfRange(in, offset, offset + width));
+	}
+
+
+	/**
+	* Reads a record at an absolute position; in itself is not modified, so
+	* several threads may decode from the same buffer.
+	* @param in source buffer, e.g. a mapped file region
+	* @param offset absolute position of the record
+	* @return the ciphertext
+	*/
+
+	public BigInteger decode(ByteBuffer in, int offset) {
+
+		byte[] bytes = new byte[width];
+		ByteBuffer view = in.duplicate();
+		view.position(offset);
+		view.get(bytes);
+		return new BigInteger(1, bytes);
+	}
+
+
+	/**
+	* Writes the header at the current position of out and advances it.
+	* @param out destination buffer with at least HEADER_SIZE bytes remaining
+	*/
+
+	public void writeHeader(ByteBuffer out) {
+
+		out.putInt(MAGIC);
+		out.put(VERSION);
+		out.put((byte) scheme.ordinal());
+		out.putShort((short) 0);
+		out.putInt(width);
+		out.put(fingerprint);
+		out.putInt(0);
+	}
+
+
+	/**
+	* Reads a header at the current position of in and checks that it
+	* belongs to this codec: same format, scheme, width and key.
+	* @param in source buffer with at least HEADER_SIZE bytes remaining
+	* @throws IllegalArgumentException if the header does not match
+	*/
+
+	public void checkHeader(ByteBuffer in) {
+
+		if (in.remaining() < HEADER_SIZE)
+			throw new IllegalArgumentException("ciphertext header is truncated");
+
+		if (in.getInt() != MAGIC)
+			throw new IllegalArgumentException("not a ciphertext file");
+
+		byte version = in.get();
+		if (version != VERSION)
+			throw new IllegalArgumentException("unsupported ciphertext format version " + version);
+
+		int schemeByte = in.get();
+		if (schemeByte != scheme.ordinal())
+			throw new IllegalArgumentException("ciphertexts use scheme "
+					+ (schemeByte >= 0 && schemeByte < Scheme.values().length ? Scheme.values()[schemeByte] : schemeByte)
+					+ ", expected " + scheme);
+
+		in.getShort();
+
+		if (in.getInt() != width)
+			throw new IllegalArgumentException("ciphertext width does not match the key");
+
+		byte[] stored = new byte[FINGERPRINT_SIZE];
+		in.get(stored);
+		if (!Arrays.equals(stored, fingerprint))
+			throw new IllegalArgumentException("ciphertexts belong to a different key");
+
+		in.getInt();
+	}
+
+
+	/**
+	* @return scheme of the ciphertexts
+	*/
+
+	public Scheme getScheme() {
+		return scheme;
+	}
+
+
+	/**
+	* @return bytes per ciphertext, ceil(|n^2| / 8)
+	*/
+
+	public int getWidth() {
+		return width;
+	}
+
+
+	/**
+	* @return fingerprint of the key
+	*/
+
+	public byte[] getFingerprint() {
+		return fingerprint.clone();
+	}
+}
@@ -0,0 +1,245 @@
+/*
+* Append-only file of fixed-width ciphertexts with random access by index.
+*
+* The file is a CiphertextCodec header followed by records of codec width
+* bytes, so ciphertext i lives at HEADER_SIZE + i * width. Reads go through
+* read-only memory mappings of CHUNK_BYTES at most (a single mapping cannot
+* exceed 2 GB), created on first access and shared by all readers, so files
+* of any size are scanned without parsing and without read system calls.
+*
+* Appends are serialized; get may be called from any number of threads,
+* also while another thread appends.
+*
+*/
+
+//used for mathematical operation
+import java.math.BigInteger;
+
+//perform input and output stuff
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+//file channel and memory mappings
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+//used for Arrays implementation
+import java.util.Arrays;
+
+
+public class CiphertextFileStore implements Closeable {
+
+	/**
+	* upper bound of one mapping; chunks always hold whole records.
+	*/
+
+	private static final long CHUNK_BYTES = 1L << 30;
+
+
+	private final CiphertextCodec codec;
+
+	private final FileChannel channel;
+
+	private final int width;
+
+	private final long recordsPerChunk;
+
+
+	/**
+	* number of complete records in the file.
+	*/
+
+	private volatile long count;
+
+
+	/**
+	* mappings of the chunks, null until first read; the last chunk is
+	* remapped when it has grown since it was mapped.
+	*/
+
+	private volatile MappedByteBuffer[] chunks = new MappedByteBuffer[0];
+
+
+	/**
+	* Opens the store, creating the file with a header if it does not exist.
+	* The header of an existing file must match the codec. A partial record
+	* left by an interrupted append is ignored and overwritten.
+	* @param path file of the store
+	* @param codecVal codec of the key and scheme of the ciphertexts
+	* @throws IOException if the file cannot be opened
+	* @throws IllegalArgumentException if the file belongs to another key or scheme
+	*/
+
+	public CiphertextFileStore(Path path, CiphertextCodec codecVal) throws IOException {
+
+		codec = codecVal;
+		width = codec.getWidth();
+		recordsPerChunk = Math.max(1, CHUNK_BYTES / width);
+
+		channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+				StandardOpenOption.WRITE);
+
+		try {
+			if (channel.size() == 0) {
+				ByteBuffer header = ByteBuffer.allocate(CiphertextCodec.HEADER_SIZE);
+				codec.writeHeader(header);
+				header.flip();
+				writeFully(header, 0);
+			} else {
+				ByteBuffer header = ByteBuffer.allocate(CiphertextCodec.HEADER_SIZE);
+				while (header.hasRemaining())
+					if (channel.read(header, header.position()) < 0)
+						break;
+				header.flip();
+				codec.checkHeader(header);
+			}
+			count = Math.max(0, (channel.size() - CiphertextCodec.HEADER_SIZE) / width);
+		} catch (IOException | RuntimeException e) {
+			channel.close();
+			throw e;
+		}
+	}
+
+
+	/**
+	* Appends one ciphertext.
+	* @param c ciphertext, 0 <= c < n^2
+	* @return index of the ciphertext
+	* @throws IOException if the write fails
+	*/
+
+	public synchronized long append(BigInteger c) throws IOException {
+
+		ByteBuffer record = ByteBuffer.allocate(width);
+		codec.encode(c, record);
+		record.flip();
+		writeFully(record, offset(count));
+		return count++;
+	}
+
+
+	/**
+	* Appends the ciphertexts with a single write.
+	* @param c ciphertexts, 0 <= c[i] < n^2
+	* @return index of the first appended ciphertext
+	* @throws IOException if the write fails
+	*/
+
+	public synchronized long append(BigInteger[] c) throws IOException {
+
+		ByteBuffer records = ByteBuffer.allocate(Math.multiplyExact(c.length, width));
+		for (BigInteger ci : c)
+			codec.encode(ci, records);
+		records.flip();
+
+		long first = count;
+		writeFully(records, offset(first));
+		count = first + c.length;
+		return first;
+	}
+
+
+	/**
+	* @param index index of the ciphertext, 0 <= index < size()
+	* @return the ciphertext
+	*/
+
+	public BigInteger get(long index) {
+
+		if (index < 0 || index >= count)
+			throw new IndexOutOfBoundsException("index " + index + ", size " + count);
+
+		int chunk = (int) (index / recordsPerChunk);
+		int position = (int) ((index % recordsPerChunk) * width);
+
+		MappedByteBuffer[] mapped = chunks;
+		MappedByteBuffer buffer = chunk < mapped.length ? mapped[chunk] : null;
+		if (buffer == null || buffer.capacity() < position + width)
+			buffer = map(chunk);
+
+		return codec.decode(buffer, position);
+	}
+
+
+	/**
+	* @return number of ciphertexts in the store
+	*/
+
+	public long size() {
+		return count;
+	}
+
+
+	/**
+	* @return codec of the store
+	*/
+
+	public CiphertextCodec getCodec() {
+		return codec;
+	}
+
+
+	/**
+	* Forces the appended ciphertexts to the storage device.
+	* @throws IOException if the flush fails
+	*/
+
+	public void force() throws IOException {
+
+		channel.force(false);
+	}
+
+
+	/**
+	* Closes the file. The mappings stay valid until they are collected.
+	*/
+
+	@Override
+	public void close() throws IOException {
+
+		channel.close();
+	}
+
+
+	/**
+	* Maps the records of a chunk that exist now.
+	*/
+
+	private synchronized MappedByteBuffer map(int chunk) {
+
+		MappedByteBuffer[] mapped = chunks;
+		if (chunk >= mapped.length)
+			mapped = Arrays.copyOf(mapped, chunk + 1);
+		else
+			mapped = mapped.clone();
+
+		long first = chunk * recordsPerChunk;
+		long records = Math.min(recordsPerChunk, count - first);
+
+		try {
+			mapped[chunk] = channel.map(FileChannel.MapMode.READ_ONLY, offset(first), records * width);
+		} catch (IOException e) {
+			throw new UncheckedIOException("cannot map ciphertext file", e);
+		}
+
+		chunks = mapped;
+		return mapped[chunk];
+	}
+
+
+	private long offset(long index) {
+
+		return CiphertextCodec.HEADER_SIZE + index * width;
+	}
+
+
+	private void writeFully(ByteBuffer buffer, long position) throws IOException {
+
+		while (buffer.hasRemaining())
+			position += channel.write(buffer, position);
+	}
+}
@@ -0,0 +1,307 @@
+//References:
+//[1] Ivan Damgard, Mads Jurik, "A Generalisation, a Simplification and Some Applications of Paillier's Probabilistic Public-Key System," PKC 2001.
+
+
+/****************************************Damgard-Jurik Encryption System***********************************************************/
+/*
+* Generalization of Paillier's scheme to the modulus n^(s+1), s >= 1.
+* s = 1 is the standard scheme with g = n+1.
+*
+* Key generation
+*
+* 1). Choose two large primes p and q of equal length with gcd(pq, (p-1)(q-1)) = 1.
+*
+* 2). Compute n = p.q and lambda = lcm(p-1, q-1).
+*
+* 3). The public key is (n, s) with g = n+1, the private key is lambda.
+*
+*
+* Encryption
+*
+* 1). Let m be a message where m belongs to Z_(n^s), i.e. |n|*s bits of plaintext.
+*
+* 2). Select random r where r belongs to Z*_n.
+*
+* 3). Compute ciphertext as c = g^m * r^(n^s) mod n^(s+1), a ciphertext of |n|*(s+1) bits,
+*     so the expansion is (s+1)/s instead of 2.
+*
+*
+* Decryption
+*
+* 1). Compute a = c^lambda mod n^(s+1) = (1+n)^(lambda*m mod n^s).
+*
+* 2). Extract i = lambda*m mod n^s from a with the recursive algorithm of [1], section 3:
+*     i is recovered mod n, n^2, ..., n^s from L(a mod n^(j+1)) = (a mod n^(j+1) - 1)/n
+*     by subtracting the binomial terms C(i,k)*n^(k-1) of the already known lower digits.
+*
+* 3). m = i * lambda^(-1) mod n^s.
+*
+*
+* Homomorphic properties are those of Paillier:
+*      D(c1 * c2 mod n^(s+1)) = m1 + m2 mod n^s,   D(c^k mod n^(s+1)) = k * m mod n^s.
+*
+*/
+
+//used for mathematical operation
+import java.math.BigInteger;
+
+
+public class DamgardJurik {
+
+	/**
+	* p and q are two large primes.
+	* lambda = lcm(p-1, q-1).
+	*/
+
+	private BigInteger p, q, lambda;
+
+
+	/**
+	* n = p*q, ns = n^s is the plaintext modulus and
+	* nsPlusOne = n^(s+1) the ciphertext modulus.
+	*/
+
+	public BigInteger n, ns, nsPlusOne;
+
+	private final int s;
+
+
+	/**
+	* nPower[j] = n^j for j = 0..s+1.
+	*/
+
+	private BigInteger[] nPower;
+
+	/**
+	* factorialInverse[k] = (k!)^(-1) mod n^s for k = 0..s.
+	*/
+
+	private BigInteger[] factorialInverse;
+
+	private BigInteger lambdaInverse;
+
+
+	/**
+	* per-key constants for the CRT exponentiation c^lambda mod n^(s+1):
+	* pPower = p^(s+1), qPower = q^(s+1), qPowerInverse = q^(-(s+1)) mod p^(s+1).
+	*/
+
+	private BigInteger pPower, qPower, qPowerInverse;
+
+
+	private final RandomnessProvider random;
+
+
+	/**
+	* Constructs an instance of the Damgard-Jurik cryptosystem.
+	* @param bitLengthVal number of bits of n
+	* @param certainty The probability that the new BigInteger
+	* represents a prime number will exceed (1 - 2^(-certainty)).
+	* @param sVal plaintexts are in Z_(n^s), ciphertexts in Z*_(n^(s+1))
+	*/
+
+	public DamgardJurik(int bitLengthVal, int certainty, int sVal) {
+
+		this(bitLengthVal, certainty, sVal, RandomnessProvider.secure());
+	}
+
+
+	/**
+	* Constructs an instance of the Damgard-Jurik cryptosystem.
+	* @param bitLengthVal number of bits of n
+	* @param certainty The probability that the new BigInteger
+	* represents a prime number will exceed (1 - 2^(-certainty)).
+	* @param sVal plaintexts are in Z_(n^s), ciphertexts in Z*_(n^(s+1))
+	* @param randomVal source of the primes and of the random r
+	*/
+
+	public DamgardJurik(int bitLengthVal, int certainty, int sVal, RandomnessProvider randomVal) {
+
+		if (sVal < 1)
+			throw new IllegalArgumentException("s must be at least 1");
+
+		s = sVal;
+		random = randomVal;
+
+		KeyGeneration(bitLengthVal, certainty);
+	}
+
+
+	/**
+	* Sets up the public key and private key.
+	* @param bitLengthVal number of bits of n
+	* @param certainty The probability that the new BigInteger
+	* represents a prime number will exceed (1 - 2^(-certainty)).
+	*/
+
+	public void KeyGeneration(int bitLengthVal, int certainty) {
+
+		PrimeGenerator generator = PrimeGenerator.forSize(bitLengthVal / 2, certainty);
+
+		do {
+			p = generator.next(random);
+			q = generator.next(random);
+		} while (p.equals(q) || !p.multiply(q).gcd(p.subtract(BigInteger.ONE)
+						.multiply(q.subtract(BigInteger.ONE))).equals(BigInteger.ONE));
+
+		n = p.multiply(q);
+
+		nPower = new BigInteger[s + 2];
+		nPower[0] = BigInteger.ONE;
+		for (int j = 1; j <= s + 1; j++)
+			nPower[j] = nPower[j - 1].multiply(n);
+
+		ns = nPower[s];
+		nsPlusOne = nPower[s + 1];
+
+		//lambda = lcm( (p-1) , (q-1) )
+		BigInteger pMinusOne = p.subtract(BigInteger.ONE), qMinusOne = q.subtract(BigInteger.ONE);
+		lambda = pMinusOne.multiply(qMinusOne).divide(pMinusOne.gcd(qMinusOne));
+
+		lambdaInverse = lambda.modInverse(ns);
+
+		//k! < p for k <= s, so the factorials are invertible mod n^s
+		factorialInverse = new BigInteger[s + 1];
+		BigInteger factorial = BigInteger.ONE;
+		for (int k = 0; k <= s; k++) {
+			if (k > 0)
+				factorial = factorial.multiply(BigInteger.valueOf(k));
+			factorialInverse[k] = factorial.modInverse(ns);
+		}
+
+		pPower = p.pow(s + 1);
+		qPower = q.pow(s + 1);
+		qPowerInverse = qPower.modInverse(pPower);
+	}
+
+
+	/**
+	* Encrypts plaintext m. ciphertext c = (1+n)^m * r^(n^s) mod n^(s+1).
+	* @param m plaintext in Z_(n^s)
+	* @param r random value in Z*_n
+	* @return ciphertext as a BigInteger
+	*/
+
+	public BigInteger Encryption(BigInteger m, BigInteger r) {
+
+		return gPow(m).multiply(r.modPow(ns, nsPlusOne)).mod(nsPlusOne);
+	}
+
+
+	/**
+	* Encrypts plaintext m with a fresh random r.
+	* @param m plaintext in Z_(n^s)
+	* @return ciphertext as a BigInteger
+	*/
+
+	public BigInteger Encryption(BigInteger m) {
+
+		BigInteger r;
+		do {
+			r = random.nextBigInteger(n.bitLength()).mod(n);
+		} while (r.signum() == 0);
+
+		return Encryption(m, r);
+	}
+
+
+	/**
+	* (1+n)^m mod n^(s+1) by the binomial expansion
+	*      (1+n)^m = sum_(k=0..s) C(m,k) * n^k mod n^(s+1),
+	* which costs s multiplications instead of an exponentiation.
+	*/
+
+	private BigInteger gPow(BigInteger m) {
+
+		m = m.mod(ns);
+
+		BigInteger result = BigInteger.ONE, term = BigInteger.ONE;
+
+		//term_k = m(m-1)...(m-k+1) * n^k, divided by k! at the end
+		for (int k = 1; k <= s; k++) {
+			term = term.multiply(m.subtract(BigInteger.valueOf(k - 1))).multiply(n).mod(nsPlusOne);
+			result = result.add(term.multiply(factorialInverse[k])).mod(nsPlusOne);
+		}
+		return result;
+	}
+
+
+	/**
+	* Decrypts ciphertext c.
+	* @param c ciphertext as a BigInteger
+	* @return plaintext in Z_(n^s)
+	*/
+
+	public BigInteger Decryption(BigInteger c) {
+
+		//c^lambda mod n^(s+1), computed mod p^(s+1) and q^(s+1)
+		BigInteger ap = c.mod(pPower).modPow(lambda, pPower);
+		BigInteger aq = c.mod(qPower).modPow(lambda, qPower);
+		BigInteger a = ap.subtract(aq).multiply(qPowerInverse).mod(pPower).multiply(qPower).add(aq);
+
+		return extract(a).multiply(lambdaInverse).mod(ns);
+	}
+
+
+	/**
+	* Recursive extraction of i from a = (1+n)^i mod n^(s+1), i in Z_(n^s),
+	* following [1], section 3.
+	*/
+
+	private BigInteger extract(BigInteger a) {
+
+		BigInteger i = BigInteger.ZERO;
+
+		for (int j = 1; j <= s; j++) {
+
+			BigInteger modulus = nPower[j];
+
+			//t1 = L(a mod n^(j+1))
+			BigInteger t1 = a.mod(nPower[j + 1]).subtract(BigInteger.ONE).divide(n);
+			BigInteger t2 = i;
+
+			for (int k = 2; k <= j; k++) {
+				i = i.subtract(BigInteger.ONE);
+				t2 = t2.multiply(i).mod(modulus);
+				t1 = t1.subtract(t2.multiply(nPower[k - 1]).multiply(factorialInverse[k])).mod(modulus);
+			}
+			i = t1.mod(modulus);
+		}
+		return i;
+	}
+
+
+	/**
+	* Homomorphic addition: D(c1 * c2 mod n^(s+1)) = m1 + m2 mod n^s.
+	* @param c1 first ciphertext
+	* @param c2 second ciphertext
+	* @return ciphertext of the sum
+	*/
+
+	public BigInteger HomomorphicAddition(BigInteger c1, BigInteger c2) {
+
+		return c1.multiply(c2).mod(nsPlusOne);
+	}
+
+
+	/**
+	* Homomorphic multiplication by a plaintext: D(c^k mod n^(s+1)) = k * m mod n^s.
+	* @param c ciphertext
+	* @param k plaintext factor
+	* @return ciphertext of the product
+	*/
+
+	public BigInteger HomomorphicMultiplication(BigInteger c, BigInteger k) {
+
+		return c.modPow(k, nsPlusOne);
+	}
+
+
+	/**
+	* @return s, the plaintext modulus is n^s
+	*/
+
+	public int getS() {
+		return s;
+	}
+}
@@ -0,0 +1,447 @@
+/*
+* Columnar store of encrypted numeric columns with plaintext key columns,
+* answering SUM, COUNT, AVG and GROUP BY without decrypting.
+*
+*      SUM   : product of the ciphertexts of a column mod n^2
+*      COUNT : number of rows, kept in plaintext
+*      AVG   : SUM and COUNT; the key holder divides after decryption
+*
+* Rows are appended to an open segment. When it holds segmentRows rows it
+* is sealed and never changes again, so the aggregates of a sealed segment
+* are computed once, on first query, and cached in the segment: one
+* ciphertext and one count per group.
+*
+* Every query shape (value column, optional GROUP BY column) also keeps
+* its running aggregate over the sealed segments folded so far. A repeated
+* query folds only the segments sealed since its last run and then adds
+* the open segment, so dashboards that ask the same question over and over
+* touch only new data.
+*
+* Aggregation of new segments runs in parallel on the common fork/join
+* pool; the ungrouped sum of a segment is a HomomorphicAggregator tree
+* reduction. Appends are serialized, queries may run from any thread.
+*
+* The store holds ciphertexts of one key and only needs n^2. Decryption of
+* the results is left to the holder of the private key, see Aggregate.
+*
+*/
+
+//used for mathematical operation
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.MathContext;
+
+//used for the schema, the segments and the query results
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+
+public class EncryptedColumnStore {
+
+	/**
+	* default number of rows per segment.
+	*/
+
+	public static final int DEFAULT_SEGMENT_ROWS = 4096;
+
+	/**
+	* group of an ungrouped query.
+	*/
+
+	public static final String ALL = "";
+
+
+	private final HomomorphicAggregator aggregator;
+
+	private final int segmentRows;
+
+	private final Map<String, Integer> keyColumns, valueColumns;
+
+
+	/**
+	* sealed segments in append order, and the open segment.
+	*/
+
+	private final List<Segment> sealed = new ArrayList<Segment>();
+
+	private Segment open;
+
+
+	/**
+	* running aggregates per query shape over the first folded sealed segments.
+	*/
+
+	private final ConcurrentHashMap<String, Folded> folded = new ConcurrentHashMap<String, Folded>();
+
+
+	/**
+	* Store with the default segment size.
+	* @param paillier key the ciphertexts belong to, the public part is enough
+	* @param keyColumnNames names of the plaintext key columns
+	* @param valueColumnNames names of the encrypted value columns
+	*/
+
+	public EncryptedColumnStore(Paillier paillier, String[] keyColumnNames, String[] valueColumnNames) {
+
+		this(paillier, keyColumnNames, valueColumnNames, DEFAULT_SEGMENT_ROWS);
+	}
+
+
+	/**
+	* @param paillier key the ciphertexts belong to, the public part is enough
+	* @param keyColumnNames names of the plaintext key columns
+	* @param valueColumnNames names of the encrypted value columns
+	* @param segmentRowsVal number of rows after which a segment is sealed
+	*/
+
+	public EncryptedColumnStore(Paillier paillier, String[] keyColumnNames, String[] valueColumnNames,
+			int segmentRowsVal) {
+
+		if (segmentRowsVal < 1)
+			throw new IllegalArgumentException("segment rows must be positive");
+		if (valueColumnNames.length == 0)
+			throw new IllegalArgumentException("at least one value column is required");
+
+		aggregator = new HomomorphicAggregator(paillier);
+		segmentRows = segmentRowsVal;
+		keyColumns = index(keyColumnNames);
+		valueColumns = index(valueColumnNames);
+
+		open = new Segment();
+	}
+
+
+	private static Map<String, Integer> index(String[] names) {
+
+		Map<String, Integer> columns = new LinkedHashMap<String, Integer>();
+		for (String name : names)
+			if (columns.put(name, columns.size()) != null)
+				throw new IllegalArgumentException("duplicate column " + name);
+		return Collections.unmodifiableMap(columns);
+	}
+
+
+	/**
+	* Appends one row.
+	* @param keys values of the key columns, in schema order
+	* @param ciphertexts ciphertexts of the value columns, in schema order
+	*/
+
+	public synchronized void append(String[] keys, BigInteger[] ciphertexts) {
+
+		if (keys.length != keyColumns.size() || ciphertexts.length != valueColumns.size())
+			throw new IllegalArgumentException("row has " + keys.length + " keys and " + ciphertexts.length
+					+ " values, schema has " + keyColumns.size() + " and " + valueColumns.size());
+
+		open.add(keys, ciphertexts);
+
+		if (open.rows == segmentRows) {
+			sealed.add(open);
+			open = new Segment();
+		}
+	}
+
+
+	/**
+	* Appends rows, the i-th row made of keys[i] and ciphertexts[i].
+	* @param keys key values per row
+	* @param ciphertexts value ciphertexts per row
+	*/
+
+	public synchronized void append(String[][] keys, BigInteger[][] ciphertexts) {
+
+		if (keys.length != ciphertexts.length)
+			throw new IllegalArgumentException("different number of key and value rows");
+
+		for (int i = 0; i < keys.length; i++)
+			append(keys[i], ciphertexts[i]);
+	}
+
+
+	/**
+	* COUNT(*).
+	* @return number of rows
+	*/
+
+	public synchronized long count() {
+
+		return (long) sealed.size() * segmentRows + open.rows;
+	}
+
+
+	/**
+	* SUM and COUNT of a value column over all rows.
+	* @param valueColumn name of the value column
+	* @return the aggregate, E(0) = 1 and count 0 if the store is empty
+	*/
+
+	public Aggregate sum(String valueColumn) {
+
+		Aggregate total = query(valueColumn, null).get(ALL);
+		return total == null ? new Aggregate(BigInteger.ONE, 0) : total;
+	}
+
+
+	/**
+	* SUM and COUNT of a value column per value of a key column.
+	* @param keyColumn name of the GROUP BY column
+	* @param valueColumn name of the value column
+	* @return aggregate per key, in order of first appearance
+	*/
+
+	public Map<String, Aggregate> groupBy(String keyColumn, String valueColumn) {
+
+		if (!keyColumns.containsKey(keyColumn))
+			throw new IllegalArgumentException("unknown key column " + keyColumn);
+
+		return query(valueColumn, keyColumn);
+	}
+
+
+	/**
+	* @return number of sealed segments
+	*/
+
+	public synchronized int getSealedSegments() {
+		return sealed.size();
+	}
+
+
+	/**
+	* @return names of the key columns
+	*/
+
+	public String[] getKeyColumns() {
+		return keyColumns.keySet().toArray(new String[0]);
+	}
+
+
+	/**
+	* @return names of the value columns
+	*/
+
+	public String[] getValueColumns() {
+		return valueColumns.keySet().toArray(new String[0]);
+	}
+
+
+	/**
+	* Folds the sealed segments not yet folded for this query shape into its
+	* running aggregate and returns that plus the open segment.
+	*/
+
+	private Map<String, Aggregate> query(String valueColumn, String keyColumn) {
+
+		Integer value = valueColumns.get(valueColumn);
+		if (value == null)
+			throw new IllegalArgumentException("unknown value column " + valueColumn);
+		int key = keyColumn == null ? -1 : keyColumns.get(keyColumn);
+
+		Folded shape = folded.computeIfAbsent(key + "/" + value, s -> new Folded());
+
+		Map<String, Aggregate> result, current;
+		synchronized (shape) {
+
+			//snapshot: the sealed segments not folded yet and the rows of the
+			//open segment, taken under the shape lock so that no segment is
+			//counted twice; appends only write past the snapshot's rows, so
+			//the open segment is aggregated once the store lock is released
+			List<Segment> fresh;
+			Segment last;
+			int lastRows;
+			synchronized (this) {
+				fresh = new ArrayList<Segment>(sealed.subList(shape.segments, sealed.size()));
+				last = open;
+				lastRows = open.rows;
+			}
+			current = last.aggregate(key, value, lastRows);
+
+			//segment aggregates in parallel, folded in segment order
+			List<Map<String, Aggregate>> partial = fresh.parallelStream()
+					.map(segment -> segment.cached(key, value)).collect(Collectors.toList());
+
+			for (Map<String, Aggregate> groups : partial)
+				merge(shape.groups, groups);
+			shape.segments += fresh.size();
+
+			result = new LinkedHashMap<String, Aggregate>(shape.groups);
+		}
+
+		merge(result, current);
+		return result;
+	}
+
+
+	private void merge(Map<String, Aggregate> into, Map<String, Aggregate> groups) {
+
+		for (Map.Entry<String, Aggregate> group : groups.entrySet())
+			into.merge(group.getKey(), group.getValue(), this::add);
+	}
+
+
+	private Aggregate add(Aggregate a, Aggregate b) {
+
+		return new Aggregate(aggregator.add(a.sum, b.sum), a.count + b.count);
+	}
+
+
+	/**
+	* Running aggregate of one query shape.
+	*/
+
+	private static class Folded {
+
+		int segments;
+
+		final Map<String, Aggregate> groups = new LinkedHashMap<String, Aggregate>();
+	}
+
+
+	/**
+	* Rows of one segment, column by column, with the cached aggregates once
+	* the segment is sealed.
+	*/
+
+	private class Segment {
+
+		private final String[][] keys = new String[keyColumns.size()][segmentRows];
+
+		private final BigInteger[][] values = new BigInteger[valueColumns.size()][segmentRows];
+
+		private int rows;
+
+		private final ConcurrentHashMap<String, Map<String, Aggregate>> cache =
+				new ConcurrentHashMap<String, Map<String, Aggregate>>();
+
+
+		void add(String[] rowKeys, BigInteger[] rowValues) {
+
+			for (int k = 0; k < rowKeys.length; k++)
+				keys[k][rows] = rowKeys[k];
+			for (int v = 0; v < rowValues.length; v++)
+				values[v][rows] = rowValues[v];
+			rows++;
+		}
+
+
+		/**
+		* aggregate of a sealed segment, computed on first use.
+		*/
+
+		Map<String, Aggregate> cached(int key, int value) {
+
+			return cache.computeIfAbsent(key + "/" + value, s -> aggregate(key, value, rows));
+		}
+
+
+		/**
+		* aggregate of the first count rows, grouped by key column key, or
+		* ungrouped if key is -1.
+		*/
+
+		Map<String, Aggregate> aggregate(int key, int value, int count) {
+
+			Map<String, Aggregate> groups = new LinkedHashMap<String, Aggregate>();
+			if (count == 0)
+				return groups;
+
+			BigInteger[] column = values[value];
+
+			if (key < 0) {
+				groups.put(ALL, new Aggregate(aggregator.sum(Arrays.copyOf(column, count)), count));
+				return groups;
+			}
+
+			String[] keyColumn = keys[key];
+			Map<String, BigInteger> products = new LinkedHashMap<String, BigInteger>();
+			Map<String, Long> counts = new HashMap<String, Long>();
+
+			for (int i = 0; i < count; i++) {
+				products.merge(keyColumn[i], column[i], aggregator::add);
+				counts.merge(keyColumn[i], 1L, Long::sum);
+			}
+
+			for (Map.Entry<String, BigInteger> group : products.entrySet())
+				groups.put(group.getKey(), new Aggregate(group.getValue(), counts.get(group.getKey())));
+			return groups;
+		}
+	}
+
+
+	/**
+	* Encrypted SUM and plaintext COUNT of a set of rows.
+	*/
+
+	public static class Aggregate {
+
+		private final BigInteger sum;
+
+		private final long count;
+
+
+		Aggregate(BigInteger sumVal, long countVal) {
+
+			sum = sumVal;
+			count = countVal;
+		}
+
+
+		/**
+		* @return ciphertext of the sum of the rows
+		*/
+
+		public BigInteger getSum() {
+			return sum;
+		}
+
+
+		/**
+		* @return number of rows
+		*/
+
+		public long getCount() {
+			return count;
+		}
+
+
+		/**
+		* Decrypts the sum with CRTDecryption; for the modified scheme use
+		* key.mCRTDecryption(getSum()).
+		* @param key private key of the store
+		* @return the decrypted sum, mod n
+		*/
+
+		public BigInteger decryptSum(Paillier key) {
+
+			return key.CRTDecryption(sum);
+		}
+
+
+		/**
+		* AVG of the rows; the sum must not have wrapped around n.
+		* @param key private key of the store
+		* @param mc precision of the division
+		* @return decrypted sum / count, null for no rows
+		*/
+
+		public BigDecimal average(Paillier key, MathContext mc) {
+
+			if (count == 0)
+				return null;
+			return new BigDecimal(decryptSum(key)).divide(BigDecimal.valueOf(count), mc);
+		}
+
+
+		@Override
+		public String toString() {
+			return "Aggregate[count=" + count + "]";
+		}
+	}
+}
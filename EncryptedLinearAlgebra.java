@@ -0,0 +1,299 @@
+//References:
+//[1] E. G. Straus, "Addition chains of vectors," American Mathematical Monthly, 1964.
+//[2] N. Pippenger, "On the evaluation of powers and monomials," SIAM J. Computing, 1980.
+
+
+/*
+* Encrypted dot products and matrix-vector products.
+*
+* With the homomorphic properties E(a)*E(b) = E(a+b) and E(a)^k = E(k*a),
+*
+*      E( w_1*x_1 + ... + w_k*x_k ) = E(x_1)^(w_1) * ... * E(x_k)^(w_k) mod n^2
+*
+* The product of powers is a multi-exponentiation. Instead of k separate
+* modPow calls it is evaluated as one:
+*
+*  - Straus (small k) : one shared chain of squarings, every base has a
+*    small table of its powers c^1 .. c^(2^w - 1) and contributes one
+*    multiplication per exponent window.
+*
+*  - Pippenger (large k) : per exponent window, every base is multiplied
+*    into the bucket of its digit, and the buckets are combined with two
+*    multiplications per bucket. No per-base tables are needed.
+*
+* A negative weight w_i uses the inverse ciphertext: E(x)^(-|w|) = (E(x)^(-1))^|w|.
+*
+* Rows of a matrix-vector product are computed in parallel on a fork/join pool.
+* The multiplications mod n^2 use Barrett reduction instead of BigInteger.mod.
+*
+*/
+
+//used for mathematical operation
+import java.math.BigInteger;
+
+//used for Arrays implementation
+import java.util.Arrays;
+
+//parallel rows
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+
+public class EncryptedLinearAlgebra {
+
+	/**
+	* largest number of terms evaluated with Straus, Pippenger above.
+	*/
+
+	public static final int STRAUS_THRESHOLD = 32;
+
+
+	private final BigInteger nsquare;
+
+	/**
+	* multiplications mod n^2 inside the multi-exponentiations.
+	*/
+
+	private final BarrettReduction barrett;
+
+	private final ForkJoinPool pool;
+
+
+	/**
+	* Linear algebra on the common fork/join pool.
+	* @param paillier key the ciphertexts belong to
+	*/
+
+	public EncryptedLinearAlgebra(Paillier paillier) {
+
+		this(paillier.nsquare, ForkJoinPool.commonPool());
+	}
+
+
+	/**
+	* @param nsquareVal n^2 of the key the ciphertexts belong to
+	* @param poolVal fork/join pool for the rows of matrix-vector products
+	*/
+
+	public EncryptedLinearAlgebra(BigInteger nsquareVal, ForkJoinPool poolVal) {
+
+		nsquare = nsquareVal;
+		barrett = new BarrettReduction(nsquare);
+		pool = poolVal;
+	}
+
+
+	/**
+	* Encrypted dot product.
+	* @param c ciphertexts E(x_1) .. E(x_k)
+	* @param w plaintext weights w_1 .. w_k, may be negative
+	* @return E(w_1*x_1 + ... + w_k*x_k)
+	*/
+
+	public BigInteger dotProduct(BigInteger[] c, BigInteger[] w) {
+
+		if (c.length != w.length)
+			throw new IllegalArgumentException("ciphertext and weight vectors differ in length");
+
+		return multiExponentiation(c, null, w);
+	}
+
+
+	/**
+	* Encrypted matrix-vector product, rows in parallel.
+	* @param w plaintext weight matrix, one row per result
+	* @param c ciphertext vector E(x_1) .. E(x_k)
+	* @return E(row_i . x) for every row i
+	*/
+
+	public BigInteger[] matrixVectorProduct(BigInteger[][] w, BigInteger[] c) {
+
+		//inverses of the columns with a negative weight, shared by all rows
+		BigInteger[] inverse = new BigInteger[c.length];
+		for (BigInteger[] row : w) {
+			if (row.length != c.length)
+				throw new IllegalArgumentException("matrix row and ciphertext vector differ in length");
+			for (int j = 0; j < row.length; j++)
+				if (row[j].signum() < 0 && inverse[j] == null)
+					inverse[j] = c[j].modInverse(nsquare);
+		}
+
+		BigInteger[] result = new BigInteger[w.length];
+		pool.submit(() -> IntStream.range(0, w.length).parallel()
+				.forEach(i -> result[i] = multiExponentiation(c, inverse, w[i]))).join();
+		return result;
+	}
+
+
+	/**
+	* product of c_i^(w_i) mod n^2.
+	* @param c bases
+	* @param inverse precomputed c_i^(-1) mod n^2 or null entries, may itself be null
+	* @param w signed exponents
+	*/
+
+	private BigInteger multiExponentiation(BigInteger[] c, BigInteger[] inverse, BigInteger[] w) {
+
+		int k = c.length;
+		BigInteger[] base = new BigInteger[k];
+		BigInteger[] exponent = new BigInteger[k];
+		int terms = 0, bits = 0;
+
+		for (int i = 0; i < k; i++) {
+
+			if (w[i].signum() == 0)
+				continue;
+
+			if (w[i].signum() < 0) {
+				base[terms] = (inverse != null && inverse[i] != null) ? inverse[i] : c[i].modInverse(nsquare);
+				exponent[terms] = w[i].negate();
+			} else {
+				base[terms] = c[i].mod(nsquare);
+				exponent[terms] = w[i];
+			}
+			bits = Math.max(bits, exponent[terms].bitLength());
+			terms++;
+		}
+
+		if (terms == 0)
+			return BigInteger.ONE;
+
+		if (terms == 1)
+			return base[0].modPow(exponent[0], nsquare);
+
+		if (terms <= STRAUS_THRESHOLD)
+			return straus(base, exponent, terms, bits);
+
+		return pippenger(base, exponent, terms, bits);
+	}
+
+
+	/**
+	* Straus' interleaved windowed multi-exponentiation.
+	*/
+
+	private BigInteger straus(BigInteger[] base, BigInteger[] exponent, int terms, int bits) {
+
+		int w = strausWindow(bits);
+		int entries = 1 << w;
+
+		//table[i][j] = base_i^j mod n^2
+		BigInteger[][] table = new BigInteger[terms][entries];
+		for (int i = 0; i < terms; i++) {
+			table[i][1] = base[i];
+			for (int j = 2; j < entries; j++)
+				table[i][j] = barrett.multiply(table[i][j - 1], table[i][1]);
+		}
+
+		int windows = (bits + w - 1) / w;
+		BigInteger result = BigInteger.ONE;
+
+		for (int win = windows - 1; win >= 0; win--) {
+
+			if (win != windows - 1)
+				for (int s = 0; s < w; s++)
+					result = barrett.multiply(result, result);
+
+			for (int i = 0; i < terms; i++) {
+				int digit = digit(exponent[i], win * w, w);
+				if (digit != 0)
+					result = barrett.multiply(result, table[i][digit]);
+			}
+		}
+		return result;
+	}
+
+
+	/**
+	* Pippenger's bucket multi-exponentiation.
+	*/
+
+	private BigInteger pippenger(BigInteger[] base, BigInteger[] exponent, int terms, int bits) {
+
+		int w = pippengerWindow(terms, bits);
+		int windows = (bits + w - 1) / w;
+		BigInteger[] bucket = new BigInteger[1 << w];
+		BigInteger result = BigInteger.ONE;
+
+		for (int win = windows - 1; win >= 0; win--) {
+
+			if (win != windows - 1)
+				for (int s = 0; s < w; s++)
+					result = barrett.multiply(result, result);
+
+			//bucket[d] = product of all bases whose digit in this window is d
+			Arrays.fill(bucket, null);
+			for (int i = 0; i < terms; i++) {
+				int digit = digit(exponent[i], win * w, w);
+				if (digit != 0)
+					bucket[digit] = bucket[digit] == null ? base[i] : barrett.multiply(bucket[digit], base[i]);
+			}
+
+			//product of bucket[d]^d = product over d of (bucket[top] * ... * bucket[d])
+			BigInteger running = BigInteger.ONE, window = BigInteger.ONE;
+			for (int d = bucket.length - 1; d >= 1; d--) {
+				if (bucket[d] != null)
+					running = barrett.multiply(running, bucket[d]);
+				if (!running.equals(BigInteger.ONE))
+					window = barrett.multiply(window, running);
+			}
+			result = barrett.multiply(result, window);
+		}
+		return result;
+	}
+
+
+	/**
+	* Window width of Straus' method that minimises the per-base cost
+	* (2^w - 2) table multiplications + bits/w window multiplications.
+	*/
+
+	private static int strausWindow(int bits) {
+
+		int best = 1;
+		double bestCost = Double.MAX_VALUE;
+		for (int w = 1; w <= 8; w++) {
+			double cost = ((1 << w) - 2) + Math.ceil((double) bits / w);
+			if (cost < bestCost) {
+				bestCost = cost;
+				best = w;
+			}
+		}
+		return best;
+	}
+
+
+	/**
+	* Window width that minimises (bits/w) * (terms + 2^(w+1)) multiplications.
+	*/
+
+	private static int pippengerWindow(int terms, int bits) {
+
+		int best = 1;
+		double bestCost = Double.MAX_VALUE;
+		for (int w = 1; w <= 16; w++) {
+			double cost = Math.ceil((double) bits / w) * (terms + (2 << w));
+			if (cost < bestCost) {
+				bestCost = cost;
+				best = w;
+			}
+		}
+		return best;
+	}
+
+
+	/**
+	* w bits of e starting at bit position from.
+	*/
+
+	private static int digit(BigInteger e, int from, int w) {
+
+		int digit = 0;
+		for (int k = w - 1; k >= 0; k--) {
+			digit <<= 1;
+			if (e.testBit(from + k))
+				digit |= 1;
+		}
+		return digit;
+	}
+}
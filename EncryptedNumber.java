@@ -0,0 +1,199 @@
+/*
+* Encrypted signed fixed-point number: a ciphertext of a FixedPointEncoder
+* encoding and the exponent of that encoding, which stays in plaintext.
+*
+*      add(other)     : exponents aligned to the smaller one, then c1 * c2
+*      add(scalar)    : the scalar encoded at the aligned exponent, c * g^m
+*      multiply(k)    : c^k, exponents added
+*      negate         : c^-1
+*
+* Alignment raises the ciphertext with the larger exponent to a cached
+* power of 10, so sums of numbers of different precision never leave the
+* ciphertext domain and need no encryption of 0.
+*
+* Numbers are immutable; every operation returns a new one.
+*
+*/
+
+//used for mathematical operation
+import java.math.BigDecimal;
+import java.math.BigInteger;
+
+
+public class EncryptedNumber {
+
+	private final FixedPointEncoder encoder;
+
+	private final BigInteger ciphertext;
+
+	private final int exponent;
+
+
+	/**
+	* @param encoderVal encoder of the key the ciphertext belongs to
+	* @param ciphertextVal ciphertext of the encoding
+	* @param exponentVal exponent of the encoding
+	*/
+
+	public EncryptedNumber(FixedPointEncoder encoderVal, BigInteger ciphertextVal, int exponentVal) {
+
+		encoder = encoderVal;
+		ciphertext = ciphertextVal;
+		exponent = exponentVal;
+	}
+
+
+	/**
+	* Homomorphic addition of two encrypted numbers of the same key.
+	* @param other number to add
+	* @return encrypted sum, at the smaller exponent of the two
+	*/
+
+	public EncryptedNumber add(EncryptedNumber other) {
+
+		if (other.encoder.getKey().n.compareTo(encoder.getKey().n) != 0)
+			throw new IllegalArgumentException("numbers of different keys");
+
+		int target = Math.min(exponent, other.exponent);
+		BigInteger sum = key().HomomorphicAddition(rescaled(target), other.rescaled(target));
+		return new EncryptedNumber(encoder, sum, target);
+	}
+
+
+	/**
+	* Adds a plaintext number.
+	* @param scalar number to add
+	* @return encrypted sum
+	*/
+
+	public EncryptedNumber add(BigDecimal scalar) {
+
+		int target = Math.min(exponent, -scalar.scale());
+		BigInteger m = encoder.encode(scalar, target).encoding;
+
+		//g^m is the encryption of m with r = 1; c is random already
+		BigInteger sum = key().HomomorphicAddition(rescaled(target), key().Encryption(m, BigInteger.ONE));
+		return new EncryptedNumber(encoder, sum, target);
+	}
+
+
+	/**
+	* @param other number to subtract
+	* @return encrypted difference
+	*/
+
+	public EncryptedNumber subtract(EncryptedNumber other) {
+
+		return add(other.negate());
+	}
+
+
+	/**
+	* @param scalar number to subtract
+	* @return encrypted difference
+	*/
+
+	public EncryptedNumber subtract(BigDecimal scalar) {
+
+		return add(scalar.negate());
+	}
+
+
+	/**
+	* Multiplies by a plaintext number.
+	* @param scalar factor
+	* @return encrypted product, at the sum of both exponents
+	*/
+
+	public EncryptedNumber multiply(BigDecimal scalar) {
+
+		BigInteger mantissa = scalar.unscaledValue();
+		int product = Math.addExact(exponent, -scalar.scale());
+
+		//a negative factor is applied to the inverse: c^-|k| instead of c^(n-|k|)
+		BigInteger c = mantissa.signum() < 0 ? ciphertext.modInverse(key().nsquare) : ciphertext;
+		return new EncryptedNumber(encoder, key().HomomorphicMultiplication(c, mantissa.abs()), product);
+	}
+
+
+	/**
+	* @param scalar integer factor
+	* @return encrypted product
+	*/
+
+	public EncryptedNumber multiply(long scalar) {
+
+		return multiply(BigDecimal.valueOf(scalar));
+	}
+
+
+	/**
+	* @return encryption of the negated number
+	*/
+
+	public EncryptedNumber negate() {
+
+		return new EncryptedNumber(encoder, ciphertext.modInverse(key().nsquare), exponent);
+	}
+
+
+	/**
+	* The same number at a smaller exponent, i.e. with more decimals.
+	* @param target new exponent, at most getExponent()
+	* @return the rescaled number
+	*/
+
+	public EncryptedNumber decreaseExponentTo(int target) {
+
+		return new EncryptedNumber(encoder, rescaled(target), target);
+	}
+
+
+	/**
+	* @return the number, decrypted with the private key of the encoder
+	*/
+
+	public BigDecimal decrypt() {
+
+		return encoder.decrypt(this);
+	}
+
+
+	/**
+	* @return ciphertext of the encoding
+	*/
+
+	public BigInteger getCiphertext() {
+		return ciphertext;
+	}
+
+
+	/**
+	* @return exponent of the encoding
+	*/
+
+	public int getExponent() {
+		return exponent;
+	}
+
+
+	/**
+	* ciphertext of this number at exponent target <= exponent:
+	* c^(10^(exponent - target)).
+	*/
+
+	private BigInteger rescaled(int target) {
+
+		if (target > exponent)
+			throw new IllegalArgumentException("exponent can only be decreased, from " + exponent + " to " + target);
+		if (target == exponent)
+			return ciphertext;
+
+		return key().HomomorphicMultiplication(ciphertext, encoder.scalingPower(exponent - target));
+	}
+
+
+	private Paillier key() {
+		return encoder.getKey();
+	}
+}
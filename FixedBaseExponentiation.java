@@ -0,0 +1,309 @@
+//References:
+//[1] Brickell, Gordon, McCurley, Wilson, "Fast Exponentiation with Precomputation," EUROCRYPT'92.
+//[2] Menezes, van Oorschot, Vanstone, "Handbook of Applied Cryptography," Algorithm 14.109.
+
+
+/*
+* Fixed-base windowed exponentiation.
+*
+* For a base g that never changes (the public g of a key), precompute
+*
+*      table[i][j] = g^(j * 2^(w*i)) mod N,    0 <= i < windows,  1 <= j < 2^w
+*
+* Writing the exponent e in base 2^w as e = sum e_i * 2^(w*i), we get
+*
+*      g^e = product over i of table[i][e_i] mod N
+*
+* i.e. one modular multiplication per non-zero window and no squarings at all.
+* A plain square-and-multiply needs |e| squarings and about |e|/2 multiplications.
+*
+* Memory : windows * (2^w - 1) entries of |N| bits.
+*
+*/
+
+//used for mathematical operation
+import java.math.BigInteger;
+
+//saving and loading the table
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+//used for Arrays implementation
+import java.util.Arrays;
+
+
+public class FixedBaseExponentiation {
+
+	/**
+	* the fixed base and the modulus.
+	*/
+
+	private final BigInteger base, modulus;
+
+
+	/**
+	* window width w in bits and number of windows.
+	*/
+
+	private final int windowBits, windows;
+
+
+	/**
+	* table[i][j] = base^(j * 2^(windowBits*i)) mod modulus, table[i][0] is unused.
+	*/
+
+	private final BigInteger[][] table;
+
+
+	/**
+	* Builds the table with the widest window that fits into the memory budget.
+	* @param baseVal fixed base
+	* @param modulusVal modulus
+	* @param maxExponentBits largest exponent bit length the table must cover
+	* @param memoryBudget upper bound of the table size in bytes
+	* @throws IllegalArgumentException if not even the 1-bit window table
+	* fits into memoryBudget, see fits()
+	*/
+
+	public FixedBaseExponentiation(BigInteger baseVal, BigInteger modulusVal, int maxExponentBits, long memoryBudget) {
+
+		this(baseVal, modulusVal, maxExponentBits, windowBitsFor(modulusVal, maxExponentBits, memoryBudget));
+	}
+
+
+	/**
+	* @param modulus modulus
+	* @param maxExponentBits largest exponent bit length the table must cover
+	* @param memoryBudget upper bound of the table size in bytes
+	* @return true if a table, at least the one of 1-bit windows, fits into memoryBudget
+	*/
+
+	public static boolean fits(BigInteger modulus, int maxExponentBits, long memoryBudget) {
+
+		return tableBytes(modulus.bitLength() / 8 + 1, maxExponentBits, 1) <= memoryBudget;
+	}
+
+
+	/**
+	* Builds the table for a given window width.
+	* @param baseVal fixed base
+	* @param modulusVal modulus
+	* @param maxExponentBits largest exponent bit length the table must cover
+	* @param windowBitsVal window width w in bits, 1 <= w <= 16
+	*/
+
+	public FixedBaseExponentiation(BigInteger baseVal, BigInteger modulusVal, int maxExponentBits, int windowBitsVal) {
+
+		if (windowBitsVal < 1 || windowBitsVal > 16)
+			throw new IllegalArgumentException("window width must be between 1 and 16 bits");
+
+		base = baseVal.mod(modulusVal);
+		modulus = modulusVal;
+		windowBits = windowBitsVal;
+		windows = (maxExponentBits + windowBits - 1) / windowBits;
+
+		int entries = 1 << windowBits;
+		table = new BigInteger[windows][entries];
+
+		//power = base^(2^(windowBits*i)) at the start of row i
+		BigInteger power = base;
+		for (int i = 0; i < windows; i++) {
+
+			table[i][1] = power;
+			for (int j = 2; j < entries; j++)
+				table[i][j] = table[i][j - 1].multiply(power).mod(modulus);
+
+			//base^(2^(windowBits*(i+1))) = table[i][2^w - 1] * base^(2^(windowBits*i))
+			power = table[i][entries - 1].multiply(power).mod(modulus);
+		}
+	}
+
+
+	/**
+	* Table loaded by read().
+	*/
+
+	private FixedBaseExponentiation(BigInteger baseVal, BigInteger modulusVal, int windowBitsVal, BigInteger[][] tableVal) {
+
+		base = baseVal;
+		modulus = modulusVal;
+		windowBits = windowBitsVal;
+		windows = tableVal.length;
+		table = tableVal;
+	}
+
+
+	/**
+	* Writes the table so that read() restores it without recomputation.
+	* Entries are stored as fixed-width unsigned big-endian numbers of
+	* ceil(|modulus| / 8) bytes; base and modulus are not written.
+	* @param out destination
+	* @throws IOException if writing fails
+	*/
+
+	public void write(DataOutput out) throws IOException {
+
+		int width = (modulus.bitLength() + 7) / 8;
+		out.writeByte(windowBits);
+		out.writeInt(windows);
+
+		byte[] entry = new byte[width];
+		for (int i = 0; i < windows; i++) {
+			for (int j = 1; j < table[i].length; j++) {
+				byte[] bytes = table[i][j].toByteArray();
+				int length = Math.min(bytes.length, width);
+				Arrays.fill(entry, 0, width - length, (byte) 0);
+				System.arraycopy(bytes, bytes.length - length, entry, width - length, length);
+				out.write(entry);
+			}
+		}
+	}
+
+
+	/**
+	* Reads a table written by write(). The header is checked before the
+	* table is allocated: the window count must be the one the constructor
+	* derives from maxExponentBits, and the table must fit into the heap.
+	* @param in source
+	* @param baseVal the fixed base the table was built for
+	* @param modulusVal the modulus the table was built for
+	* @param maxExponentBits largest exponent bit length the table was built for
+	* @return the table
+	* @throws IOException if reading fails or the data is malformed
+	*/
+
+	public static FixedBaseExponentiation read(DataInput in, BigInteger baseVal, BigInteger modulusVal, int maxExponentBits)
+			throws IOException {
+
+		int windowBits = in.readUnsignedByte();
+		int windows = in.readInt();
+		if (windowBits < 1 || windowBits > 16 || maxExponentBits < 1
+				|| windows != (maxExponentBits + windowBits - 1) / windowBits)
+			throw new IOException("malformed fixed-base table");
+
+		int width = (modulusVal.bitLength() + 7) / 8;
+		if (tableBytes(width, maxExponentBits, windowBits) > Runtime.getRuntime().maxMemory())
+			throw new IOException("fixed-base table of " + windowBits + "-bit windows does not fit into the heap");
+
+		int entries = 1 << windowBits;
+		BigInteger[][] table = new BigInteger[windows][entries];
+
+		byte[] entry = new byte[width];
+		for (int i = 0; i < windows; i++) {
+			for (int j = 1; j < entries; j++) {
+				in.readFully(entry);
+				table[i][j] = new BigInteger(1, entry);
+			}
+		}
+
+		if (!table[0][1].equals(baseVal.mod(modulusVal)))
+			throw new IOException("fixed-base table belongs to a different base");
+
+		return new FixedBaseExponentiation(baseVal.mod(modulusVal), modulusVal, windowBits, table);
+	}
+
+
+	/**
+	* Widest window w such that the table fits into memoryBudget bytes.
+	*/
+
+	private static int windowBitsFor(BigInteger modulus, int maxExponentBits, long memoryBudget) {
+
+		if (!fits(modulus, maxExponentBits, memoryBudget))
+			throw new IllegalArgumentException("a fixed-base table needs at least "
+					+ tableBytes(modulus.bitLength() / 8 + 1, maxExponentBits, 1) + " bytes, budget is " + memoryBudget);
+
+		long entryBytes = modulus.bitLength() / 8 + 1;
+		int w = 1;
+		while (w < 16 && tableBytes(entryBytes, maxExponentBits, w + 1) <= memoryBudget)
+			w++;
+		return w;
+	}
+
+
+	private static long tableBytes(long entryBytes, int maxExponentBits, int w) {
+
+		long windows = (maxExponentBits + w - 1) / w;
+		return windows * ((1L << w) - 1) * entryBytes;
+	}
+
+
+	/**
+	* Computes base^e mod modulus. Exponents that are negative or longer
+	* than the table covers fall back to BigInteger.modPow.
+	* @param e exponent as a BigInteger
+	* @return base^e mod modulus
+	*/
+
+	public BigInteger modPow(BigInteger e) {
+
+		if (e.signum() < 0 || e.bitLength() > windows * windowBits)
+			return base.modPow(e, modulus);
+
+		BigInteger result = BigInteger.ONE;
+		int mask = (1 << windowBits) - 1;
+		int bits = e.bitLength();
+
+		for (int i = 0, bit = 0; bit < bits; i++, bit += windowBits) {
+
+			//extract window i of the exponent
+			int digit = 0;
+			for (int k = windowBits - 1; k >= 0; k--) {
+				digit <<= 1;
+				if (e.testBit(bit + k))
+					digit |= 1;
+			}
+			digit &= mask;
+
+			if (digit != 0)
+				result = result.multiply(table[i][digit]).mod(modulus);
+		}
+		return result;
+	}
+
+
+	/**
+	* @return the fixed base
+	*/
+
+	public BigInteger getBase() {
+		return base;
+	}
+
+
+	/**
+	* @return the modulus
+	*/
+
+	public BigInteger getModulus() {
+		return modulus;
+	}
+
+
+	/**
+	* @return largest exponent bit length handled from the table
+	*/
+
+	public int getMaxExponentBits() {
+		return windows * windowBits;
+	}
+
+
+	/**
+	* @return window width in bits
+	*/
+
+	public int getWindowBits() {
+		return windowBits;
+	}
+
+
+	/**
+	* @return approximate size of the table in bytes
+	*/
+
+	public long getTableBytes() {
+		return tableBytes(modulus.bitLength() / 8 + 1, windows * windowBits, windowBits);
+	}
+}
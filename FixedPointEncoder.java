@@ -0,0 +1,244 @@
+/*
+* Signed and fixed-point encoding of decimal numbers into Z_n.
+*
+* A number is stored as an integer mantissa and a base 10 exponent,
+*
+*      value = mantissa * 10^exponent
+*
+* and the mantissa is mapped to Z_n in the manner of two's complement:
+*
+*      0 <= mantissa <= maxMantissa    ->  mantissa
+*      -maxMantissa <= mantissa < 0    ->  n + mantissa
+*
+* with maxMantissa = (n - 1) / 3. Encodings between maxMantissa and
+* n - maxMantissa, around n/2, are not valid; a result that lands there
+* has overflowed and decode throws instead of returning a wrong number.
+*
+* Addition and multiplication by a plaintext work on the encodings as they
+* do on integers mod n, so they carry over to the ciphertexts unchanged.
+* Two numbers are added at the smaller of their exponents: the other one
+* is multiplied by 10^difference first, which on a ciphertext is a single
+* exponentiation c^(10^difference) and needs no fresh encryption of 0.
+* The powers of 10 are computed once and cached in the encoder.
+*
+*/
+
+//used for mathematical operation
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.RoundingMode;
+
+//cache of the scaling powers
+import java.util.concurrent.ConcurrentHashMap;
+
+
+public class FixedPointEncoder {
+
+	/**
+	* base of the exponents.
+	*/
+
+	public static final int BASE = 10;
+
+
+	private final Paillier key;
+
+	private final BigInteger n, maxMantissa;
+
+	/**
+	* BASE^k, by k.
+	*/
+
+	private final ConcurrentHashMap<Integer, BigInteger> scalingPowers = new ConcurrentHashMap<Integer, BigInteger>();
+
+
+	/**
+	* @param keyVal key to encrypt with; the public part is enough for everything but decryption
+	*/
+
+	public FixedPointEncoder(Paillier keyVal) {
+
+		key = keyVal;
+		n = key.n;
+		maxMantissa = n.subtract(BigInteger.ONE).divide(BigInteger.valueOf(3));
+	}
+
+
+	/**
+	* Encoding of a number with the exponent of its scale,
+	* e.g. 12.50 becomes 1250 * 10^-2.
+	* @param value number to encode
+	* @return the encoded number
+	* @throws ArithmeticException if the mantissa does not fit
+	*/
+
+	public Encoded encode(BigDecimal value) {
+
+		return new Encoded(encodeMantissa(value.unscaledValue()), -value.scale());
+	}
+
+
+	/**
+	* Encoding of a number at a fixed exponent, rounding half to even.
+	* @param value number to encode
+	* @param exponent exponent of the encoding, e.g. -4 for four decimals
+	* @return the encoded number
+	* @throws ArithmeticException if the mantissa does not fit
+	*/
+
+	public Encoded encode(BigDecimal value, int exponent) {
+
+		return encode(value.setScale(-exponent, RoundingMode.HALF_EVEN));
+	}
+
+
+	/**
+	* @param value integer to encode, at exponent 0
+	* @return the encoded number
+	*/
+
+	public Encoded encode(long value) {
+
+		return new Encoded(encodeMantissa(BigInteger.valueOf(value)), 0);
+	}
+
+
+	/**
+	* @param encoding encoding in Z_n
+	* @param exponent exponent of the encoding
+	* @return the number it encodes
+	* @throws ArithmeticException if the encoding lies in the overflow range
+	*/
+
+	public BigDecimal decode(BigInteger encoding, int exponent) {
+
+		return new BigDecimal(decodeMantissa(encoding), -exponent);
+	}
+
+
+	/**
+	* Encrypts a number with the exponent of its scale.
+	* @param value number to encrypt
+	* @return the encrypted number
+	*/
+
+	public EncryptedNumber encrypt(BigDecimal value) {
+
+		Encoded encoded = encode(value);
+		return new EncryptedNumber(this, key.Encryption(encoded.encoding), encoded.exponent);
+	}
+
+
+	/**
+	* Encrypts a number at a fixed exponent.
+	* @param value number to encrypt
+	* @param exponent exponent of the encoding
+	* @return the encrypted number
+	*/
+
+	public EncryptedNumber encrypt(BigDecimal value, int exponent) {
+
+		Encoded encoded = encode(value, exponent);
+		return new EncryptedNumber(this, key.Encryption(encoded.encoding), encoded.exponent);
+	}
+
+
+	/**
+	* @param value integer to encrypt, at exponent 0
+	* @return the encrypted number
+	*/
+
+	public EncryptedNumber encrypt(long value) {
+
+		return new EncryptedNumber(this, key.Encryption(encode(value).encoding), 0);
+	}
+
+
+	/**
+	* Decrypts with CRTDecryption and decodes.
+	* @param number encrypted number of this encoder's key
+	* @return the number
+	* @throws ArithmeticException if the result has overflowed
+	*/
+
+	public BigDecimal decrypt(EncryptedNumber number) {
+
+		return decode(key.CRTDecryption(number.getCiphertext()), number.getExponent());
+	}
+
+
+	/**
+	* @return the key of the encoder
+	*/
+
+	public Paillier getKey() {
+		return key;
+	}
+
+
+	/**
+	* @return largest absolute mantissa that can be encoded
+	*/
+
+	public BigInteger getMaxMantissa() {
+		return maxMantissa;
+	}
+
+
+	/**
+	* BASE^k, computed on first use and cached.
+	* @param k exponent, k >= 0
+	* @return the power
+	*/
+
+	BigInteger scalingPower(int k) {
+
+		return scalingPowers.computeIfAbsent(k, e -> BigInteger.valueOf(BASE).pow(e));
+	}
+
+
+	/**
+	* signed mantissa to Z_n.
+	*/
+
+	BigInteger encodeMantissa(BigInteger mantissa) {
+
+		if (mantissa.abs().compareTo(maxMantissa) > 0)
+			throw new ArithmeticException("mantissa " + mantissa + " does not fit in |n| = " + n.bitLength() + " bits");
+
+		return mantissa.signum() < 0 ? n.add(mantissa) : mantissa;
+	}
+
+
+	/**
+	* Z_n to signed mantissa.
+	*/
+
+	BigInteger decodeMantissa(BigInteger encoding) {
+
+		if (encoding.compareTo(maxMantissa) <= 0)
+			return encoding;
+		if (encoding.compareTo(n.subtract(maxMantissa)) >= 0)
+			return encoding.subtract(n);
+
+		throw new ArithmeticException("overflow: encoding lies between n/3 and 2n/3");
+	}
+
+
+	/**
+	* A number encoded in Z_n, not encrypted.
+	*/
+
+	public static class Encoded {
+
+		public final BigInteger encoding;
+
+		public final int exponent;
+
+		Encoded(BigInteger encodingVal, int exponentVal) {
+
+			encoding = encodingVal;
+			exponent = exponentVal;
+		}
+	}
+}
@@ -0,0 +1,197 @@
+/*
+* Homomorphic sum of many ciphertexts of one key.
+*
+*      D( c_1 * c_2 * ... * c_k mod n^2 ) = m_1 + m_2 + ... + m_k mod n
+*
+* holds for the standard and for the modified scheme, so the same
+* aggregation serves both.
+*
+* The product is computed as a parallel tree reduction on a fork/join
+* pool: ranges are split in halves until they are small, the leaves
+* multiply sequentially, and the partial products are multiplied back
+* together on the way up.
+*
+* Inside a leaf the reduction mod n^2 is delayed: up to lazyProducts
+* ciphertexts are multiplied as plain integers before one mod n^2.
+* This is always correct, because reducing earlier or later does not change
+* the residue; it only trades multiplication size for fewer reductions.
+* With BigInteger arithmetic the wider products cost more than the saved
+* reductions, so the default is to reduce after every product.
+*
+*/
+
+//used for mathematical operation
+import java.math.BigInteger;
+
+//collection and stream inputs
+import java.util.Collection;
+import java.util.stream.Stream;
+
+//parallel execution
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+
+public class HomomorphicAggregator {
+
+	/**
+	* default number of ciphertexts multiplied by one leaf task.
+	*/
+
+	public static final int DEFAULT_LEAF_SIZE = 1024;
+
+	/**
+	* default number of ciphertexts multiplied before one reduction mod n^2.
+	*/
+
+	public static final int DEFAULT_LAZY_PRODUCTS = 1;
+
+
+	private final BigInteger nsquare;
+
+	private final int leafSize, lazyProducts;
+
+	private final ForkJoinPool pool;
+
+
+	/**
+	* Aggregator on the common fork/join pool with default settings.
+	* @param paillier key the ciphertexts belong to
+	*/
+
+	public HomomorphicAggregator(Paillier paillier) {
+
+		this(paillier.nsquare, DEFAULT_LEAF_SIZE, DEFAULT_LAZY_PRODUCTS, ForkJoinPool.commonPool());
+	}
+
+
+	/**
+	* @param nsquareVal n^2 of the key the ciphertexts belong to
+	* @param leafSizeVal number of ciphertexts multiplied by one leaf task
+	* @param lazyProductsVal number of ciphertexts multiplied before one reduction mod n^2
+	* @param poolVal fork/join pool that runs the reduction
+	*/
+
+	public HomomorphicAggregator(BigInteger nsquareVal, int leafSizeVal, int lazyProductsVal, ForkJoinPool poolVal) {
+
+		if (leafSizeVal < 1 || lazyProductsVal < 1)
+			throw new IllegalArgumentException("leaf size and lazy products must be positive");
+
+		nsquare = nsquareVal;
+		leafSize = leafSizeVal;
+		lazyProducts = lazyProductsVal;
+		pool = poolVal;
+	}
+
+
+	/**
+	* Homomorphic sum of an array of ciphertexts.
+	* @param c ciphertexts
+	* @return ciphertext of the sum of the plaintexts, E(0) = 1 for no input
+	*/
+
+	public BigInteger sum(BigInteger[] c) {
+
+		if (c.length <= leafSize)
+			return multiply(c, 0, c.length);
+
+		return pool.invoke(new Product(c, 0, c.length));
+	}
+
+
+	/**
+	* Homomorphic sum of a collection of ciphertexts.
+	* @param c ciphertexts
+	* @return ciphertext of the sum of the plaintexts
+	*/
+
+	public BigInteger sum(Collection<BigInteger> c) {
+
+		return sum(c.toArray(new BigInteger[0]));
+	}
+
+
+	/**
+	* Homomorphic sum of a stream of ciphertexts. The stream is reduced
+	* in parallel, so it must not depend on encounter order.
+	* @param c ciphertexts
+	* @return ciphertext of the sum of the plaintexts
+	*/
+
+	public BigInteger sum(Stream<BigInteger> c) {
+
+		return pool.submit(() -> c.parallel().reduce(BigInteger.ONE, this::add)).join();
+	}
+
+
+	/**
+	* Homomorphic addition of two ciphertexts.
+	* @param c1 first ciphertext
+	* @param c2 second ciphertext
+	* @return c1 * c2 mod n^2
+	*/
+
+	public BigInteger add(BigInteger c1, BigInteger c2) {
+
+		return c1.multiply(c2).mod(nsquare);
+	}
+
+
+	/**
+	* Sequential product of c[from .. to) mod n^2, reducing after
+	* every lazyProducts multiplications.
+	*/
+
+	private BigInteger multiply(BigInteger[] c, int from, int to) {
+
+		BigInteger product = BigInteger.ONE;
+		int pending = 0;
+
+		for (int i = from; i < to; i++) {
+
+			product = product.multiply(c[i]);
+
+			if (++pending == lazyProducts) {
+				product = product.mod(nsquare);
+				pending = 0;
+			}
+		}
+		return product.mod(nsquare);
+	}
+
+
+	/**
+	* Tree node of the reduction over c[from .. to).
+	*/
+
+	@SuppressWarnings("serial")
+	private class Product extends RecursiveTask<BigInteger> {
+
+		private final BigInteger[] c;
+
+		private final int from, to;
+
+
+		Product(BigInteger[] cVal, int fromVal, int toVal) {
+
+			c = cVal;
+			from = fromVal;
+			to = toVal;
+		}
+
+
+		@Override
+		protected BigInteger compute() {
+
+			if (to - from <= leafSize)
+				return multiply(c, from, to);
+
+			int middle = (from + to) >>> 1;
+			Product left = new Product(c, from, middle);
+			left.fork();
+			BigInteger right = new Product(c, middle, to).compute();
+
+			return add(left.join(), right);
+		}
+	}
+}
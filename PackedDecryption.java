@@ -0,0 +1,175 @@
+/*
+* Packed decryption of many ciphertexts of small plaintexts.
+*
+* Every ciphertext c_i is shifted into its own slot of w bits by the
+* homomorphic property E(m)^k = E(k*m), and the shifted ciphertexts are
+* multiplied together:
+*
+*      C = c_0 * c_1^(2^w) * c_2^(2^(2w)) * ... * c_(k-1)^(2^((k-1)w)) mod n^2
+*        = E( m_0 + m_1*2^w + ... + m_(k-1)*2^((k-1)w) )
+*
+* so one private-key exponentiation decrypts k values, as long as every
+* m_i < 2^w and k*w < |n|. The powers are evaluated with Horner's rule,
+*
+*      C = ( ... (c_(k-1)^(2^w) * c_(k-2))^(2^w) ... )^(2^w) * c_0
+*
+* i.e. (k-1)*w squarings mod n^2 in total.
+*
+* Overflow check : each slot can carry guard bits above the w value bits.
+* A plaintext that does not fit into w bits then shows up as non-zero guard
+* bits instead of silently corrupting the next slot.
+*
+*/
+
+//used for mathematical operation
+import java.math.BigInteger;
+
+
+public class PackedDecryption {
+
+	private final Paillier paillier;
+
+	/**
+	* bits per value, guard bits above each value, and values per ciphertext.
+	*/
+
+	private final int slotBits, guardBits, slots;
+
+	/**
+	* 2^(slotBits+guardBits), the shift between two slots.
+	*/
+
+	private final BigInteger shift;
+
+	private final BigInteger valueMask, guardMask;
+
+
+	/**
+	* Packed decryption without overflow check.
+	* @param paillierVal key to decrypt with
+	* @param slotBitsVal bits per plaintext, every plaintext must be below 2^slotBitsVal
+	*/
+
+	public PackedDecryption(Paillier paillierVal, int slotBitsVal) {
+
+		this(paillierVal, slotBitsVal, 0);
+	}
+
+
+	/**
+	* @param paillierVal key to decrypt with
+	* @param slotBitsVal bits per plaintext, every plaintext must be below 2^slotBitsVal
+	* @param guardBitsVal guard bits per slot that must decrypt to zero,
+	* 0 turns the overflow check off
+	*/
+
+	public PackedDecryption(Paillier paillierVal, int slotBitsVal, int guardBitsVal) {
+
+		if (slotBitsVal < 1 || guardBitsVal < 0)
+			throw new IllegalArgumentException("slot width must be positive and guard bits non-negative");
+
+		paillier = paillierVal;
+		slotBits = slotBitsVal;
+		guardBits = guardBitsVal;
+
+		//k*w must stay below |n| so that the packed plaintext never wraps mod n
+		slots = (paillier.n.bitLength() - 1) / (slotBits + guardBits);
+
+		if (slots < 1)
+			throw new IllegalArgumentException("slot width exceeds the plaintext space");
+
+		shift = BigInteger.ONE.shiftLeft(slotBits + guardBits);
+		valueMask = BigInteger.ONE.shiftLeft(slotBits).subtract(BigInteger.ONE);
+		guardMask = shift.subtract(BigInteger.ONE).xor(valueMask);
+	}
+
+
+	/**
+	* Decrypts ciphertexts of the standard scheme, k at a time.
+	* @param c ciphertexts whose plaintexts are below 2^slotBits
+	* @return plaintexts in input order
+	*/
+
+	public BigInteger[] Decryption(BigInteger[] c) {
+
+		return decrypt(c, false);
+	}
+
+
+	/**
+	* Decrypts ciphertexts of the modified scheme, k at a time.
+	* @param c ciphertexts whose plaintexts are below 2^slotBits
+	* @return plaintexts in input order
+	*/
+
+	public BigInteger[] mDecryption(BigInteger[] c) {
+
+		return decrypt(c, true);
+	}
+
+
+	private BigInteger[] decrypt(BigInteger[] c, boolean modified) {
+
+		BigInteger[] m = new BigInteger[c.length];
+
+		for (int from = 0; from < c.length; from += slots) {
+
+			int count = Math.min(slots, c.length - from);
+
+			BigInteger packed = pack(c, from, count);
+
+			BigInteger plain = modified ? paillier.mCRTDecryption(packed) : paillier.CRTDecryption(packed);
+
+			unpack(plain, m, from, count);
+		}
+		return m;
+	}
+
+
+	/**
+	* Horner evaluation of c_from * c_(from+1)^shift * ... mod n^2.
+	*/
+
+	private BigInteger pack(BigInteger[] c, int from, int count) {
+
+		BigInteger nsquare = paillier.nsquare;
+		BigInteger packed = c[from + count - 1];
+
+		for (int i = from + count - 2; i >= from; i--)
+			packed = packed.modPow(shift, nsquare).multiply(c[i]).mod(nsquare);
+
+		return packed;
+	}
+
+
+	/**
+	* Splits a decrypted packed plaintext back into its slots.
+	*/
+
+	private void unpack(BigInteger plain, BigInteger[] m, int from, int count) {
+
+		int stride = slotBits + guardBits;
+
+		if (guardBits > 0 && plain.bitLength() > count * stride)
+			throw new ArithmeticException("packed plaintext overflows its " + count + " slots");
+
+		for (int i = 0; i < count; i++) {
+
+			BigInteger slot = plain.shiftRight(i * stride);
+
+			if (guardBits > 0 && slot.and(guardMask).signum() != 0)
+				throw new ArithmeticException("plaintext " + (from + i) + " does not fit into " + slotBits + " bits");
+
+			m[from + i] = slot.and(valueMask);
+		}
+	}
+
+
+	/**
+	* @return number of ciphertexts decrypted with one exponentiation
+	*/
+
+	public int getSlots() {
+		return slots;
+	}
+}
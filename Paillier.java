@@ -126,6 +126,11 @@ import java.util.Random;
 //interaction with user and machine
 import java.util.Scanner;
 
+//key fingerprint
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
 //perform input and output stuff
 import java.io.*;
 
@@ -179,6 +184,96 @@ public class Paillier {
 	private int bitLength;
 
 
+	/**
+	* per-key constants for CRT decryption, computed once per key.
+	* psquare = p^2, qsquare = q^2,
+	* hp = (Lp(g^(p-1) mod p^2))^(-1) mod p, where Lp(u) = (u-1)/p,
+	* hq = (Lq(g^(q-1) mod q^2))^(-1) mod q, where Lq(u) = (u-1)/q,
+	* qInverse = q^(-1) mod p.
+	*/
+
+	private BigInteger psquare, qsquare, pMinusOne, qMinusOne, hp, hq, qInverse;
+
+
+	/**
+	* per-key constants for mCRTDecryption of the modified scheme.
+	* hpAlpha = (Lp(g^alpha mod p^2))^(-1) mod p,
+	* hqAlpha = (Lq(g^alpha mod q^2))^(-1) mod q,
+	* muAlpha = (L(g^alpha mod n^2))^(-1) mod n, used by mDecryption.
+	*/
+
+	private BigInteger hpAlpha, hqAlpha, muAlpha;
+
+
+	/**
+	* true if the key uses the simpler variant g = n+1, in which case
+	* g^m mod n^2 = 1 + m*n mod n^2 and mu = phi(n)^(-1) mod n is kept.
+	*/
+
+	private boolean simpleVariant;
+
+	private BigInteger mu;
+
+
+	/**
+	* true if the key comes from mKeyGeneration; alpha is known only with
+	* the private key.
+	*/
+
+	private boolean modifiedVariant;
+
+
+	/**
+	* optional fixed-base table for g, used by Encryption and mEncryption
+	* once FixedBasePrecomputation has been called for the current key.
+	*/
+
+	private volatile FixedBaseExponentiation gTable;
+
+
+	/**
+	* optional pool of precomputed r^n mod n^2 values, used by
+	* Encryption(m) once StartRandomizerPool has been called.
+	*/
+
+	private volatile RandomizerPool randomizerPool;
+
+
+	/**
+	* key file format of ExportKey and ImportKey.
+	*/
+
+	private static final int KEY_MAGIC = 0x504b4559;
+
+	private static final byte KEY_VERSION = 1;
+
+	private static final int KEY_PRIVATE = 1, KEY_SIMPLE = 2, KEY_MODIFIED = 4, KEY_TABLE = 8;
+
+
+	/**
+	* source of the random r of the encryptions and of the primes and alpha
+	* of key generation; per-thread SecureRandom DRBGs unless replaced.
+	*/
+
+	private volatile RandomnessProvider random = RandomnessProvider.secure();
+
+
+	/**
+	* SHA-256 of the public key (n, g), computed on first use.
+	*/
+
+	private volatile byte[] fingerprint;
+
+
+	/**
+	* counters and latency histograms of this key, see PaillierMetrics;
+	* looked up on first use after key generation, and again once
+	* PaillierMetrics.remove dropped them.
+	*/
+
+	private volatile PaillierMetrics.KeyMetrics keyMetrics;
+
+
 	/**
 	* Constructs an instance of the Paillier cryptosystem.
 	* @param bitLengthVal number of bits of modulus
@@ -196,6 +291,62 @@ public class Paillier {
 	}
 
 
+	/**
+	* Constructs an instance of the Paillier cryptosystem.
+	* @param bitLengthVal number of bits of modulus
+	* @param certainty The probability that the new BigInteger
+	* represents a prime number will exceed (1 - 2^(-certainty)).
+	* @param simpleVariantVal if true, use the simpler variant g = n+1
+	*/
+
+	public Paillier(int bitLengthVal, int certainty, boolean simpleVariantVal) {
+
+		KeyGeneration(bitLengthVal, certainty, simpleVariantVal);
+
+	}
+
+
+	/**
+	* Constructs an instance of the Paillier cryptosystem whose key generation
+	* and encryptions draw from the given randomness, e.g. a seeded provider
+	* for reproducible tests and benchmarks.
+	* @param bitLengthVal number of bits of modulus
+	* @param certainty The probability that the new BigInteger
+	* represents a prime number will exceed (1 - 2^(-certainty)).
+	* @param randomVal source of randomness
+	*/
+
+	public Paillier(int bitLengthVal, int certainty, RandomnessProvider randomVal) {
+
+		random = randomVal;
+
+		KeyGeneration(bitLengthVal, certainty);
+
+	}
+
+
+	/**
+	* Constructs an instance without keys, drawing from the given
+	* randomness; KeyGeneration or mKeyGeneration must be called before
+	* use. Generates a key of the wanted scheme once, where the other
+	* constructors would first generate a standard one.
+	* @param randomVal source of randomness
+	*/
+
+	public Paillier(RandomnessProvider randomVal) {
+
+		random = randomVal;
+	}
+
+
+	/**
+	* Instance without keys, filled in by ImportKey.
+	*/
+
+	private Paillier(Void noKeyGeneration) {
+	}
+
+
 	/**
 	* Constructs an instance of the Paillier cryptosystem with 512
 	* bits of modulus and 
@@ -203,10 +354,11 @@ public class Paillier {
 	*/
 
 	public Paillier() {
-	
-		KeyGeneration(512, 64);
+
+		//mKeyGeneration sets up the complete key pair; its g also serves
+		//Encryption and Decryption, so key generation runs only once
 		mKeyGeneration(512,64);
-	
+
 	}
 
 	
@@ -222,21 +374,73 @@ public class Paillier {
 	
 	public void KeyGeneration(int bitLengthVal, int certainty) {
 
+		KeyGeneration(bitLengthVal, certainty, false);
+
+	}
+
+
+	/**
+	* Sets up the public key and private key.
+	* @param bitLengthVal number of bits of modulus.
+	* @param certainty The probability that the new BigInteger
+	* represents a prime number
+	*will exceed (1 - 2^(-certainty)).
+	* @param simpleVariantVal if true, use the simpler variant
+	* g = n+1, lambda = phi(n) and mu = phi(n)^(-1) mod n,
+	* otherwise g = 2 and lambda = lcm(p-1, q-1).
+	*/
+
+	public void KeyGeneration(int bitLengthVal, int certainty, boolean simpleVariantVal) {
+
+		long start = PaillierMetrics.start();
+
 		bitLength = bitLengthVal;
-		
+
+		simpleVariant = simpleVariantVal;
+
+		modifiedVariant = false;
+
+		//no alpha of a previous mKeyGeneration survives into the new key
+		alpha = null;
+		hpAlpha = null;
+		hqAlpha = null;
+		muAlpha = null;
+
+		gTable = null;
+
+		fingerprint = null;
+
+		keyMetrics = null;
+
+		StopRandomizerPool();
+
 	
 		/*Constructs two randomly generated positive BigIntegers
 		* that are probably prime, with the specified bitLength 
 		and certainty.*/
 	
-		p = new BigInteger(bitLength / 2, certainty, new Random());
-
-		q = new BigInteger(bitLength / 2, certainty, new Random());
+		PrimeGeneration(certainty);
 
 		n = p.multiply(q);
 		
 		nsquare = n.multiply(n);
 
+		if (simpleVariant) {
+
+			// g = n+1, lambda = phi(n) = (p-1)*(q-1), mu = phi(n)^(-1) mod n
+			g = n.add(BigInteger.ONE);
+
+			lambda = p.subtract(BigInteger.ONE).multiply(q.subtract(BigInteger.ONE));
+
+			mu = lambda.modInverse(n);
+
+			CRTPrecomputation();
+
+			PaillierMetrics.forKey(null).record(PaillierMetrics.Operation.KEY_GENERATION, start);
+
+			return;
+		}
+
 		g = new BigInteger("2");
 
         //lambda = lcm( (p-1) , (q-1) )
@@ -260,6 +464,10 @@ public class Paillier {
 				
 				System.exit(1);
 		}
+
+		CRTPrecomputation();
+
+		PaillierMetrics.forKey(null).record(PaillierMetrics.Operation.KEY_GENERATION, start);
     }
 	/**
 	* Sets up the public key and private key.
@@ -273,16 +481,64 @@ public class Paillier {
 	
 	public void mKeyGeneration(int bitLengthVal, int certainty) {
 
+		//320-bit alpha, shorter only where p-1 has no room for it
+		mKeyGeneration(bitLengthVal, certainty, Math.min(320, bitLengthVal / 2 - 32));
+
+	}
+
+
+	/**
+	* Sets up the public key and private key of the modified scheme with a
+	* decryption exponent alpha of lVal bits. p is built as p = 2*alpha*k + 1,
+	* so alpha divides p-1 and therefore lambda = lcm(p-1, q-1), and
+	* mDecryption costs O(|N|^2*|alpha|) instead of O(|N|^2*|lambda|).
+	* @param bitLengthVal number of bits of modulus.
+	* @param certainty The probability that the new BigInteger
+	* represents a prime number
+	*will exceed (1 - 2^(-certainty)).
+	* @param lVal number of bits of alpha, at most bitLengthVal/2 - 32
+	*/
+
+	public void mKeyGeneration(int bitLengthVal, int certainty, int lVal) {
+
+		long start = PaillierMetrics.start();
+
+		if (lVal < 2 || lVal > bitLengthVal / 2 - 32) {
+			throw new IllegalArgumentException("alpha must have between 2 and "
+								+ (bitLengthVal / 2 - 32) + " bits");
+		}
+
 		bitLength = bitLengthVal;
-		
-	
+
+		l = lVal;
+
+		simpleVariant = false;
+
+		modifiedVariant = true;
+
+		gTable = null;
+
+		fingerprint = null;
+
+		keyMetrics = null;
+
+		StopRandomizerPool();
+
+		//alpha is an l-bit prime, the private (decryption) key
+		alpha = new BigInteger(l, certainty, random.random());
+
 		/*Constructs two randomly generated positive BigIntegers
-		* that are probably prime, with the specified bitLength 
-		and certainty.*/
-	
-		p = new BigInteger(bitLength / 2, certainty, new Random());
+		* that are probably prime, with the specified bitLength
+		and certainty, p = 1 mod 2*alpha.*/
 
-		q = new BigInteger(bitLength / 2, certainty, new Random());
+		PrimeGenerator generator = PrimeGenerator.forSize(bitLength / 2, certainty);
+		BigInteger step = alpha.shiftLeft(1);
+
+		do {
+			p = generator.parallelSearch(step, Runtime.getRuntime().availableProcessors(), random);
+			q = generator.next(random);
+		} while (p.equals(q) || !p.multiply(q).gcd(p.subtract(BigInteger.ONE)
+						.multiply(q.subtract(BigInteger.ONE))).equals(BigInteger.ONE));
 
 		n = p.multiply(q);
 		
@@ -297,20 +553,12 @@ public class Paillier {
 		lambda = p.subtract(BigInteger.ONE).multiply(q.subtract(
 						BigInteger.ONE)).divide(p.subtract(
 						BigInteger.ONE).gcd(q.subtract(BigInteger.ONE)));
-			
-			//System.out.println("lambda"+alpha);
-		do{
-			//alpha = new BigInteger(l,new Random());
-			alpha = new BigInteger(320, new Random());
-			alpha = p.subtract(BigInteger.ONE);
-            //System.out.println("alpha divides lambda"+alpha);
-			
-		} while(lambda.mod(alpha)!= BigInteger.ZERO && lambda.compareTo(alpha) != 0 );
+
+		//alpha | p-1 | lambda by construction
 		
 		
 		h = new BigInteger("2");
     
-        g = new BigInteger("0");
         g=h.modPow( lambda.divide(alpha) , nsquare).mod(nsquare);
         
         
@@ -325,10 +573,36 @@ public class Paillier {
 				
 				System.exit(1);
 		}
-	
+
+		CRTPrecomputation();
+
+		mCRTPrecomputation();
+
+		PaillierMetrics.forKey(null).record(PaillierMetrics.Operation.M_KEY_GENERATION, start);
+
 	}
 
 
+/**
+* Chooses the primes p and q of bitLength/2 bits each from the shared
+* PrimeGenerator (parallel sieved search, or its background pool once
+* started), such that p != q and gcd(pq, (p-1)(q-1)) = 1.
+* @param certainty The probability that p and q are prime
+* will exceed (1 - 2^(-certainty)).
+*/
+
+private void PrimeGeneration(int certainty) {
+
+	PrimeGenerator generator = PrimeGenerator.forSize(bitLength / 2, certainty);
+
+	do {
+		p = generator.next(random);
+		q = generator.next(random);
+	} while (p.equals(q) || !p.multiply(q).gcd(p.subtract(BigInteger.ONE)
+					.multiply(q.subtract(BigInteger.ONE))).equals(BigInteger.ONE));
+}
+
+
 /**
 * Encrypts plaintext m. ciphertext c = g^m * r^n mod n^2. 
 * This function explicitly requires random input r to help 
@@ -340,10 +614,12 @@ public class Paillier {
 
 public BigInteger Encryption(BigInteger m, BigInteger r) {
     
+	long start = PaillierMetrics.start();
+
     //Encrypts plaintext m. ciphertext c = g^m * r^n mod n^2. 
     
-	return g.modPow(m, nsquare).multiply(r.modPow(n, nsquare)).
-									mod(nsquare);
+	return record(PaillierMetrics.Operation.ENCRYPTION, start, gPow(m).multiply(r.modPow(n, nsquare)).
+									mod(nsquare));
 }
 
 
@@ -357,15 +633,144 @@ public BigInteger Encryption(BigInteger m, BigInteger r) {
 
 public BigInteger Encryption(BigInteger m) {
 
+	long start = PaillierMetrics.start();
+
+	//take a precomputed r^n mod n^2 if the pool is running
+	RandomizerPool pool = randomizerPool;
+	if (pool != null)
+		return record(PaillierMetrics.Operation.ENCRYPTION, start, gPow(m).multiply(pool.take()).mod(nsquare));
+
     //generate random number
-	BigInteger r = new BigInteger(bitLength, new Random());
+	BigInteger r = random.nextBigInteger(bitLength);
 	
 	//Encrypts plaintext m. ciphertext c = g^m * r^n mod n^2. 
-	return g.modPow(m, nsquare).multiply(r.modPow(n, nsquare)).mod(nsquare);
+	return record(PaillierMetrics.Operation.ENCRYPTION, start, gPow(m).multiply(r.modPow(n, nsquare)).mod(nsquare));
 
 }
 
 
+/**
+* Computes g^e mod n^2. For the simpler variant g = n+1 the binomial
+* expansion (1+n)^e = 1 + e*n mod n^2 replaces the exponentiation.
+* @param e exponent as a BigInteger
+* @return g^e mod n^2
+*/
+
+private BigInteger gPow(BigInteger e) {
+
+	if (simpleVariant)
+		return e.multiply(n).add(BigInteger.ONE).mod(nsquare);
+
+	FixedBaseExponentiation table = gTable;
+	if (table != null)
+		return table.modPow(e);
+
+	return g.modPow(e, nsquare);
+}
+
+
+/**
+* Precomputes a fixed-base table for g so that Encryption and mEncryption
+* compute g^e mod n^2 with one multiplication per exponent window and no
+* squarings. The table covers exponents up to |n| + l + 1 bits, which is
+* the size of m + n*r in mEncryption. Has no effect for the simpler
+* variant g = n+1, which needs no exponentiation. A budget below the
+* smallest table (1-bit windows) builds no table and drops the current
+* one, so the table never exceeds the budget; TableBytes() is 0 then.
+* @param memoryBudget upper bound of the table size in bytes
+*/
+
+public void FixedBasePrecomputation(long memoryBudget) {
+
+	if (simpleVariant)
+		return;
+
+	int maxExponentBits = n.bitLength() + l + 1;
+	gTable = FixedBaseExponentiation.fits(nsquare, maxExponentBits, memoryBudget)
+			? new FixedBaseExponentiation(g, nsquare, maxExponentBits, memoryBudget) : null;
+}
+
+
+/**
+* @return size in bytes of the fixed-base table of g, 0 without a table
+*/
+
+public long TableBytes() {
+
+	FixedBaseExponentiation table = gTable;
+	return table == null ? 0 : table.getTableBytes();
+}
+
+
+/**
+* @return true if this instance holds the private key, not only (n, g)
+*/
+
+public boolean HasPrivateKey() {
+
+	return p != null;
+}
+
+
+/**
+* @return true if the key comes from mKeyGeneration, i.e. serves
+* mEncryption, and with the private key mDecryption and mCRTDecryption
+*/
+
+public boolean IsModified() {
+
+	return modifiedVariant;
+}
+
+
+/**
+* Starts background threads that precompute randomizers r^n mod n^2 for
+* Encryption(m). A running pool of the previous key is stopped first.
+* @param capacity maximum number of precomputed randomizers
+* @param lowWatermark the workers start filling below this size
+* @param highWatermark the workers stop filling at this size
+* @param threads number of worker threads
+* @return the pool, for its hit and miss counters
+*/
+
+public RandomizerPool StartRandomizerPool(int capacity, int lowWatermark, int highWatermark, int threads) {
+
+	StopRandomizerPool();
+	randomizerPool = new RandomizerPool(n, bitLength, capacity, lowWatermark, highWatermark, threads, random);
+	return randomizerPool;
+}
+
+
+/**
+* Replaces the source of randomness of the following key generations and
+* encryptions. A running randomizer pool keeps its previous source until it
+* is restarted.
+* @param randomVal source of randomness, e.g. RandomnessProvider.seeded(seed)
+*/
+
+public void UseRandomnessProvider(RandomnessProvider randomVal) {
+
+	if (randomVal == null)
+		throw new IllegalArgumentException("randomness provider must not be null");
+
+	random = randomVal;
+}
+
+
+/**
+* Stops the randomizer pool, if any. Encryption(m) computes r^n mod n^2
+* inline again.
+*/
+
+public void StopRandomizerPool() {
+
+	RandomizerPool pool = randomizerPool;
+	randomizerPool = null;
+	if (pool != null)
+		pool.shutdown();
+}
+
+
 /**
 * Decrypts ciphertext c. plaintext m = L(c^lambda mod n^2) * u mod n,
 * where u = (L(g^lambda mod n^2))^(-1) mod n.
@@ -395,10 +800,349 @@ public BigInteger Decryption(BigInteger c) {
           =       L(c^lambda mode n^2 ) * ( L(g^lambda mode n^2 )^ (-1) ) mod (n)
           
 */
-	BigInteger mu = g.modPow(lambda, nsquare).subtract(BigInteger.ONE)
-								.divide(n).modInverse(n);
-	return c.modPow(lambda, nsquare).subtract(BigInteger.ONE)
-							.divide(n).multiply(mu).mod(n);
+	long start = PaillierMetrics.start();
+
+	//mu = L(g^lambda mod n^2)^(-1) mod n is cached per key, see CRTPrecomputation
+	return record(PaillierMetrics.Operation.DECRYPTION, start, c.modPow(lambda, nsquare).subtract(BigInteger.ONE)
+							.divide(n).multiply(mu).mod(n));
+}
+
+
+/**
+* Precomputes the per-key constants used by CRTDecryption.
+* Called once at the end of key generation, so that decryption
+* does not recompute them for every ciphertext.
+*/
+
+private void CRTPrecomputation() {
+
+	psquare = p.multiply(p);
+	qsquare = q.multiply(q);
+
+	pMinusOne = p.subtract(BigInteger.ONE);
+	qMinusOne = q.subtract(BigInteger.ONE);
+
+	// hp = Lp(g^(p-1) mod p^2)^(-1) mod p
+	hp = g.mod(psquare).modPow(pMinusOne, psquare).subtract(BigInteger.ONE)
+								.divide(p).modInverse(p);
+
+	// hq = Lq(g^(q-1) mod q^2)^(-1) mod q
+	hq = g.mod(qsquare).modPow(qMinusOne, qsquare).subtract(BigInteger.ONE)
+								.divide(q).modInverse(q);
+
+	qInverse = q.modInverse(p);
+
+	// mu = L(g^lambda mod n^2)^(-1) mod n, for g = n+1 it is phi(n)^(-1) mod n
+	if (!simpleVariant)
+		mu = g.modPow(lambda, nsquare).subtract(BigInteger.ONE).divide(n).modInverse(n);
+}
+
+
+/**
+* Fingerprint of the public key: SHA-256 over the length-prefixed
+* big-endian bytes of n and g. Stored with serialized ciphertexts so that
+* they are never decrypted or combined under the wrong key.
+* @return 32-byte fingerprint
+*/
+
+public byte[] Fingerprint() {
+
+	byte[] result = fingerprint;
+	if (result == null) {
+		try {
+			MessageDigest digest = MessageDigest.getInstance("SHA-256");
+			for (BigInteger value : new BigInteger[] { n, g }) {
+				byte[] bytes = value.toByteArray();
+				digest.update(ByteBuffer.allocate(4).putInt(bytes.length).array());
+				digest.update(bytes);
+			}
+			result = digest.digest();
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException("SHA-256 not available", e);
+		}
+		fingerprint = result;
+	}
+	return result.clone();
+}
+
+
+/**
+* Writes the key in a compact binary format (DataOutputStream, big-endian):
+*
+*      int magic, byte version, byte flags, int bitLength, int l, n, g,
+*      [private]  p, q, lambda, mu, hp, hq, qInverse,
+*      [modified and private] alpha, hpAlpha, hqAlpha,
+*      [table]    fixed-base table of g,
+*
+* where every number is an int length followed by its two's-complement
+* bytes. With the derived constants and the table stored, ImportKey needs
+* no exponentiation at all.
+* @param out destination, flushed but not closed
+* @param includePrivate write the private key and the decryption constants
+* @param includeTable write the fixed-base table of g, if FixedBasePrecomputation built one
+* @throws IOException if writing fails
+*/
+
+public void ExportKey(OutputStream out, boolean includePrivate, boolean includeTable) throws IOException {
+
+	if (includePrivate && p == null)
+		throw new IllegalStateException("this instance holds only a public key");
+
+	FixedBaseExponentiation table = includeTable ? gTable : null;
+
+	DataOutputStream data = new DataOutputStream(new BufferedOutputStream(out, 1 << 16));
+
+	data.writeInt(KEY_MAGIC);
+	data.writeByte(KEY_VERSION);
+	data.writeByte((includePrivate ? KEY_PRIVATE : 0) | (simpleVariant ? KEY_SIMPLE : 0)
+			| (modifiedVariant ? KEY_MODIFIED : 0) | (table != null ? KEY_TABLE : 0));
+	data.writeInt(bitLength);
+	data.writeInt(l);
+
+	writeNumbers(data, n, g);
+
+	if (includePrivate)
+		writeNumbers(data, p, q, lambda, mu, hp, hq, qInverse);
+
+	if (includePrivate && modifiedVariant)
+		writeNumbers(data, alpha, hpAlpha, hqAlpha);
+
+	if (table != null)
+		table.write(data);
+
+	data.flush();
+}
+
+
+/**
+* Writes the key to a file, see ExportKey(OutputStream, boolean, boolean).
+* @param fileName key file, overwritten if it exists
+* @param includePrivate write the private key and the decryption constants
+* @param includeTable write the fixed-base table of g, if one was built
+* @throws IOException if writing fails
+*/
+
+public void ExportKey(String fileName, boolean includePrivate, boolean includeTable) throws IOException {
+
+	try (OutputStream out = new FileOutputStream(fileName)) {
+		ExportKey(out, includePrivate, includeTable);
+	}
+}
+
+
+/**
+* Reads a key written by ExportKey. No primes are generated and no
+* per-key constant is recomputed. An instance read without the private
+* key can only encrypt.
+* @param in source, read up to the end of the key
+* @return the key
+* @throws IOException if reading fails or the data is not a key
+*/
+
+public static Paillier ImportKey(InputStream in) throws IOException {
+
+	DataInputStream data = new DataInputStream(in);
+
+	if (data.readInt() != KEY_MAGIC)
+		throw new IOException("not a Paillier key");
+
+	int version = data.readByte();
+	if (version != KEY_VERSION)
+		throw new IOException("unsupported key format version " + version);
+
+	int flags = data.readByte();
+
+	//g = n+1 has no alpha and no table
+	if ((flags & ~(KEY_PRIVATE | KEY_SIMPLE | KEY_MODIFIED | KEY_TABLE)) != 0
+			|| (flags & KEY_SIMPLE) != 0 && (flags & (KEY_MODIFIED | KEY_TABLE)) != 0)
+		throw new IOException("inconsistent key flags " + flags);
+
+	Paillier key = new Paillier((Void) null);
+
+	key.simpleVariant = (flags & KEY_SIMPLE) != 0;
+	key.modifiedVariant = (flags & KEY_MODIFIED) != 0;
+	key.bitLength = data.readInt();
+	key.l = data.readInt();
+
+	key.n = readNumber(data);
+	key.g = readNumber(data);
+	key.nsquare = key.n.multiply(key.n);
+
+	if (key.n.signum() <= 0 || key.l < 0 || key.l > key.n.bitLength())
+		throw new IOException("malformed public key");
+
+	if (key.simpleVariant && !key.g.equals(key.n.add(BigInteger.ONE)))
+		throw new IOException("simple variant key with g != n+1");
+
+	if ((flags & KEY_PRIVATE) != 0) {
+
+		key.p = readNumber(data);
+		key.q = readNumber(data);
+		key.lambda = readNumber(data);
+		key.mu = readNumber(data);
+		key.hp = readNumber(data);
+		key.hq = readNumber(data);
+		key.qInverse = readNumber(data);
+
+		if (!key.p.multiply(key.q).equals(key.n))
+			throw new IOException("private key does not match n");
+
+		key.psquare = key.p.multiply(key.p);
+		key.qsquare = key.q.multiply(key.q);
+		key.pMinusOne = key.p.subtract(BigInteger.ONE);
+		key.qMinusOne = key.q.subtract(BigInteger.ONE);
+	}
+
+	if (key.modifiedVariant && key.p != null) {
+
+		key.alpha = readNumber(data);
+		key.hpAlpha = readNumber(data);
+		key.hqAlpha = readNumber(data);
+
+		if (key.alpha.bitLength() != key.l || key.pMinusOne.mod(key.alpha).signum() != 0)
+			throw new IOException("alpha does not match the private key");
+
+		key.muAlpha = key.muAlpha();
+	}
+
+	if ((flags & KEY_TABLE) != 0)
+		key.gTable = FixedBaseExponentiation.read(data, key.g, key.nsquare, key.n.bitLength() + key.l + 1);
+
+	return key;
+}
+
+
+/**
+* Reads a key file written by ExportKey.
+* @param fileName key file
+* @return the key
+* @throws IOException if reading fails or the file is not a key
+*/
+
+public static Paillier ImportKey(String fileName) throws IOException {
+
+	try (InputStream in = new BufferedInputStream(new FileInputStream(fileName), 1 << 16)) {
+		return ImportKey(in);
+	}
+}
+
+
+private static void writeNumbers(DataOutputStream data, BigInteger... values) throws IOException {
+
+	for (BigInteger value : values) {
+		byte[] bytes = value.toByteArray();
+		data.writeInt(bytes.length);
+		data.write(bytes);
+	}
+}
+
+
+private static BigInteger readNumber(DataInputStream data) throws IOException {
+
+	int length = data.readInt();
+	if (length < 1 || length > 1 << 20)
+		throw new IOException("malformed number in key");
+
+	byte[] bytes = new byte[length];
+	data.readFully(bytes);
+	return new BigInteger(bytes);
+}
+
+
+/**
+* @return counters and latency histograms of the current key
+*/
+
+public PaillierMetrics.KeyMetrics Metrics() {
+
+	PaillierMetrics.KeyMetrics result = keyMetrics;
+	if (result == null || result.isRemoved()) {
+		result = PaillierMetrics.forKey(Fingerprint());
+		keyMetrics = result;
+	}
+	return result;
+}
+
+
+/**
+* Records one call of an operation of this key that started at start,
+* see PaillierMetrics.start(), and passes its result through.
+*/
+
+private BigInteger record(PaillierMetrics.Operation operation, long start, BigInteger result) {
+
+	if (start != 0L)
+		Metrics().record(operation, start);
+	return result;
+}
+
+
+/**
+* Homomorphic addition: D(c1 * c2 mod n^2) = m1 + m2 mod n.
+* @param c1 first ciphertext
+* @param c2 second ciphertext
+* @return ciphertext of the sum
+*/
+
+public BigInteger HomomorphicAddition(BigInteger c1, BigInteger c2) {
+
+	long start = PaillierMetrics.start();
+
+	return record(PaillierMetrics.Operation.HOMOMORPHIC_ADDITION, start, c1.multiply(c2).mod(nsquare));
+}
+
+
+/**
+* Homomorphic multiplication by a plaintext: D(c^k mod n^2) = k * m mod n.
+* @param c ciphertext
+* @param k plaintext factor
+* @return ciphertext of the product
+*/
+
+public BigInteger HomomorphicMultiplication(BigInteger c, BigInteger k) {
+
+	long start = PaillierMetrics.start();
+
+	return record(PaillierMetrics.Operation.HOMOMORPHIC_MULTIPLICATION, start, c.modPow(k, nsquare));
+}
+
+
+/**
+* Decrypts ciphertext c using the Chinese Remainder Theorem.
+* Gives the same plaintext as Decryption, but computes two half-size
+* exponentiations mod p^2 and q^2 instead of one mod n^2:
+*      mp = Lp(c^(p-1) mod p^2) * hp mod p
+*      mq = Lq(c^(q-1) mod q^2) * hq mod q
+*      m  = CRT(mp, mq) mod n
+* @param c ciphertext as a BigInteger
+* @return plaintext as a BigInteger
+*/
+
+public BigInteger CRTDecryption(BigInteger c) {
+
+	long start = PaillierMetrics.start();
+
+	BigInteger mp = c.mod(psquare).modPow(pMinusOne, psquare).subtract(BigInteger.ONE)
+							.divide(p).multiply(hp).mod(p);
+
+	BigInteger mq = c.mod(qsquare).modPow(qMinusOne, qsquare).subtract(BigInteger.ONE)
+							.divide(q).multiply(hq).mod(q);
+
+	return record(PaillierMetrics.Operation.CRT_DECRYPTION, start, CRTRecombination(mp, mq));
+}
+
+
+/**
+* Recombines m mod p and m mod q into m mod n (Garner's formula):
+*      m = mq + q * ( (mp - mq) * q^(-1) mod p )
+* @param mp plaintext mod p
+* @param mq plaintext mod q
+* @return plaintext mod n
+*/
+
+private BigInteger CRTRecombination(BigInteger mp, BigInteger mq) {
+
+	return mp.subtract(mq).multiply(qInverse).mod(p).multiply(q).add(mq);
 }
 
 
@@ -413,6 +1157,8 @@ public BigInteger Decryption(BigInteger c) {
 
 public BigInteger mEncryption(BigInteger m, BigInteger r) {
     
+	long start = PaillierMetrics.start();
+
 									int result;
 	//ramdom number should always less than  2^l
 	BigInteger checker = new BigInteger("2");
@@ -442,11 +1188,12 @@ public BigInteger mEncryption(BigInteger m, BigInteger r) {
 	
 	if(result  != -1 ){
 		System.out.println("Selection of r is not good, r should always less than pow(2,l) {informally less than alpha}");
+		Metrics().reject(PaillierMetrics.Operation.M_ENCRYPTION);
 		return BigInteger.ZERO;
 	}
 	
 	//Encrypts plaintext m. ciphertext c = g^(m + n*r) mod n^2. 
-	return g.modPow(m.add(n.multiply(r) ), nsquare).mod(nsquare);
+	return record(PaillierMetrics.Operation.M_ENCRYPTION, start, gPow(m.add(n.multiply(r) )));
 
 }
 
@@ -461,6 +1208,8 @@ public BigInteger mEncryption(BigInteger m, BigInteger r) {
 
 public BigInteger mEncryption(BigInteger m) {
 
+	long start = PaillierMetrics.start();
+
 	int result;
 	//ramdom number should always less than  2^l
 	BigInteger checker = new BigInteger("2");
@@ -489,21 +1238,21 @@ public BigInteger mEncryption(BigInteger m) {
 	BigInteger r;
 	do{
 		 //generate random number
-			r = new BigInteger(l, new Random());
+			r = random.nextBigInteger(l);
 			result = r.compareTo(checker);
 			//System.out.println("r<pow(2^l)");
 	
 	} while(result != -1 );
 	
 	//Encrypts plaintext m. ciphertext c = g^(m + n*r) mod n^2. 
-	return g.modPow(m.add(n.multiply(r) ), nsquare).mod(nsquare);
+	return record(PaillierMetrics.Operation.M_ENCRYPTION, start, gPow(m.add(n.multiply(r) )));
 
 }
 
 
 /**
 * Decrypts ciphertext c. plaintext m = L(c^alpha mod n^2) * u mod n,
-* where u = (L(g^alpha mod n^2))^(-1) mod n.
+* where u = muAlpha = (L(g^alpha mod n^2))^(-1) mod n is cached per key.
 * @param c ciphertext as a BigInteger
 * @return plaintext as a BigInteger
 */
@@ -529,12 +1278,122 @@ public BigInteger mDecryption(BigInteger c) {
           =       L(c^alpha mode n^2 ) * ( L(g^alpha mode n^2 )^ (-1) ) mod (n)
           
 */
-   System.out.println(alpha);
-   System.out.println(g);
-	BigInteger mu = g.modPow(alpha, nsquare).subtract(BigInteger.ONE)
-								.divide(n).modInverse(n);
-	return c.modPow(alpha, nsquare).subtract(BigInteger.ONE)
-							.divide(n).multiply(mu).mod(n);
+	long start = PaillierMetrics.start();
+
+	return record(PaillierMetrics.Operation.M_DECRYPTION, start, c.modPow(alpha, nsquare).subtract(BigInteger.ONE)
+							.divide(n).multiply(muAlpha).mod(n));
+}
+
+
+/**
+* Precomputes the per-key constants used by mCRTDecryption.
+* Called once at the end of mKeyGeneration, after CRTPrecomputation.
+*/
+
+private void mCRTPrecomputation() {
+
+	// hpAlpha = Lp(g^alpha mod p^2)^(-1) mod p
+	hpAlpha = g.mod(psquare).modPow(alpha, psquare).subtract(BigInteger.ONE)
+								.divide(p).modInverse(p);
+
+	// hqAlpha = Lq(g^alpha mod q^2)^(-1) mod q
+	hqAlpha = g.mod(qsquare).modPow(alpha, qsquare).subtract(BigInteger.ONE)
+								.divide(q).modInverse(q);
+
+	muAlpha = muAlpha();
+}
+
+
+/**
+* muAlpha from hpAlpha and hqAlpha without an exponentiation: for
+* x = 1 + k*n mod n^2, x mod p^2 = 1 + (k*q mod p)*p, so Lp(x mod p^2) = L(x)*q mod p
+* and L(x)^(-1) = hpAlpha * q mod p; likewise mod q. The halves are joined by CRT.
+*/
+
+private BigInteger muAlpha() {
+
+	return CRTRecombination(hpAlpha.multiply(q).mod(p), hqAlpha.multiply(p).mod(q));
+}
+
+
+/**
+* Decrypts ciphertext c of the modified scheme using the Chinese
+* Remainder Theorem. Gives the same plaintext as mDecryption, but
+* the alpha-exponentiation is split into two half-size ones mod p^2
+* and q^2:
+*      mp = Lp(c^alpha mod p^2) * hpAlpha mod p
+*      mq = Lq(c^alpha mod q^2) * hqAlpha mod q
+*      m  = CRT(mp, mq) mod n
+* @param c ciphertext as a BigInteger
+* @return plaintext as a BigInteger
+*/
+
+public BigInteger mCRTDecryption(BigInteger c) {
+
+	long start = PaillierMetrics.start();
+
+	BigInteger mp = c.mod(psquare).modPow(alpha, psquare).subtract(BigInteger.ONE)
+							.divide(p).multiply(hpAlpha).mod(p);
+
+	BigInteger mq = c.mod(qsquare).modPow(alpha, qsquare).subtract(BigInteger.ONE)
+							.divide(q).multiply(hqAlpha).mod(q);
+
+	return record(PaillierMetrics.Operation.M_CRT_DECRYPTION, start, CRTRecombination(mp, mq));
+}
+
+
+/**
+* Compares the running time of the decryption functions for
+* |n| = 512, 1024, 1536 and 2048 and prints the average time
+* per ciphertext (Nano Seconds) to the console.
+* @param rounds number of ciphertexts decrypted per function and size
+*/
+
+public static void DecryptionBenchmark(int rounds) {
+
+	int[] sizes = {512, 1024, 1536, 2048};
+
+	System.out.println("**************Decryption Report (Nano Seconds per ciphertext)*******************");
+	System.out.println("   |n|     Decryption    CRTDecryption   mCRTDecryption");
+
+	for (int bits : sizes) {
+
+		Paillier paillier = new Paillier(bits, 64);
+		paillier.mKeyGeneration(bits, 64);
+
+		BigInteger[] c = new BigInteger[rounds];
+		BigInteger[] mc = new BigInteger[rounds];
+		for (int i = 0; i < rounds; i++) {
+			BigInteger m = BigInteger.valueOf(i);
+			c[i] = paillier.Encryption(m);
+			mc[i] = paillier.mEncryption(m);
+		}
+
+		//warm up the JIT before timing
+		for (int i = 0; i < rounds; i++) {
+			paillier.Decryption(c[i]);
+			paillier.CRTDecryption(c[i]);
+			paillier.mCRTDecryption(mc[i]);
+		}
+
+		long start = System.nanoTime();
+		for (int i = 0; i < rounds; i++)
+			paillier.Decryption(c[i]);
+		long standard = (System.nanoTime() - start) / rounds;
+
+		start = System.nanoTime();
+		for (int i = 0; i < rounds; i++)
+			paillier.CRTDecryption(c[i]);
+		long crt = (System.nanoTime() - start) / rounds;
+
+		start = System.nanoTime();
+		for (int i = 0; i < rounds; i++)
+			paillier.mCRTDecryption(mc[i]);
+		long modified = (System.nanoTime() - start) / rounds;
+
+		System.out.printf("%6d %14d %16d %16d%n", bits, standard, crt, modified);
+	}
+	System.out.println();
 }
 
 /**
@@ -544,6 +1403,14 @@ public BigInteger mDecryption(BigInteger c) {
 
 public static void main(String[] str) {
 	
+	//with arguments, run the non-interactive batch mode, see PaillierCLI
+	if (str.length > 0) {
+		int status = PaillierCLI.run(str);
+		if (status != 0)
+			System.exit(status);
+		return;
+	}
+
 	
 	/* Allow user to provide input System*/
 	
@@ -593,6 +1460,7 @@ public static void main(String[] str) {
 		System.out.println("\t1).Standard Paillier Encryption System");
 		System.out.println("\t2).Modified Paillier Encryption System");
 		System.out.println("\t3).RunTime Comparision Report of Both System");
+		System.out.println("\t4).Decryption Report of Both System (|n| = 512 ... 2048)");
 		System.out.println("\t0).To stop Program(Exit)");
 	    System.out.println("Enter your choice");
 		Scanner in = new  Scanner(System.in);
@@ -817,6 +1685,10 @@ public static void main(String[] str) {
 	System.out.printf("Run Time  of Standard Sytem : "); System.out.println(duration);
 	System.out.printf("Run Time  of Modified Sytem : "); System.out.println(mDuration);System.out.println();
 			break;
+
+			case 4 :
+	DecryptionBenchmark(20);
+			break;
 			
 			default :
 				System.out.println("Invalid Option");
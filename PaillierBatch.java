@@ -0,0 +1,241 @@
+/*
+* Batch encryption and decryption for one Paillier key.
+*
+* The input array is split into chunks of a configurable size, the chunks
+* are processed in parallel, and the result array keeps the input order
+* (result[i] belongs to input[i]).
+*
+* By default the work runs on the common fork/join pool. Any other
+* ExecutorService can be supplied; a ForkJoinPool is used with recursive
+* splitting, other executors get one task per chunk.
+*
+* The key must not be regenerated while a batch is running.
+*
+*/
+
+//used for mathematical operation
+import java.math.BigInteger;
+
+//list variants of the batch functions
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+//parallel execution
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.UnaryOperator;
+
+
+public class PaillierBatch {
+
+	/**
+	* default number of values per chunk.
+	*/
+
+	public static final int DEFAULT_CHUNK_SIZE = 64;
+
+
+	private final Paillier paillier;
+
+	private final int chunkSize;
+
+	private final ExecutorService executor;
+
+
+	/**
+	* Batch functions on the common fork/join pool with the default chunk size.
+	* @param paillierVal key to encrypt and decrypt with
+	*/
+
+	public PaillierBatch(Paillier paillierVal) {
+
+		this(paillierVal, DEFAULT_CHUNK_SIZE, ForkJoinPool.commonPool());
+	}
+
+
+	/**
+	* @param paillierVal key to encrypt and decrypt with
+	* @param chunkSizeVal number of values processed by one task
+	* @param executorVal executor that runs the tasks
+	*/
+
+	public PaillierBatch(Paillier paillierVal, int chunkSizeVal, ExecutorService executorVal) {
+
+		if (chunkSizeVal < 1)
+			throw new IllegalArgumentException("chunk size must be positive");
+
+		paillier = paillierVal;
+		chunkSize = chunkSizeVal;
+		executor = executorVal;
+	}
+
+
+	/**
+	* Encrypts every plaintext with Encryption(m).
+	* @param m plaintexts
+	* @return ciphertexts in input order
+	*/
+
+	public BigInteger[] Encryption(BigInteger[] m) {
+		return apply(m, paillier::Encryption);
+	}
+
+
+	/**
+	* Encrypts every plaintext with mEncryption(m).
+	* @param m plaintexts
+	* @return ciphertexts in input order
+	*/
+
+	public BigInteger[] mEncryption(BigInteger[] m) {
+		return apply(m, paillier::mEncryption);
+	}
+
+
+	/**
+	* Decrypts every ciphertext of the standard scheme. Uses CRTDecryption,
+	* which gives the same plaintext as Decryption.
+	* @param c ciphertexts
+	* @return plaintexts in input order
+	*/
+
+	public BigInteger[] Decryption(BigInteger[] c) {
+		return apply(c, paillier::CRTDecryption);
+	}
+
+
+	/**
+	* Decrypts every ciphertext of the modified scheme. Uses mCRTDecryption,
+	* which gives the same plaintext as mDecryption without console output.
+	* @param c ciphertexts
+	* @return plaintexts in input order
+	*/
+
+	public BigInteger[] mDecryption(BigInteger[] c) {
+		return apply(c, paillier::mCRTDecryption);
+	}
+
+
+	/**
+	* List variant of Encryption(BigInteger[]).
+	*/
+
+	public List<BigInteger> Encryption(List<BigInteger> m) {
+		return Arrays.asList(Encryption(m.toArray(new BigInteger[0])));
+	}
+
+
+	/**
+	* List variant of mEncryption(BigInteger[]).
+	*/
+
+	public List<BigInteger> mEncryption(List<BigInteger> m) {
+		return Arrays.asList(mEncryption(m.toArray(new BigInteger[0])));
+	}
+
+
+	/**
+	* List variant of Decryption(BigInteger[]).
+	*/
+
+	public List<BigInteger> Decryption(List<BigInteger> c) {
+		return Arrays.asList(Decryption(c.toArray(new BigInteger[0])));
+	}
+
+
+	/**
+	* List variant of mDecryption(BigInteger[]).
+	*/
+
+	public List<BigInteger> mDecryption(List<BigInteger> c) {
+		return Arrays.asList(mDecryption(c.toArray(new BigInteger[0])));
+	}
+
+
+	/**
+	* Applies op to every input value in parallel.
+	* @param in input values
+	* @param op function applied to each value
+	* @return op(in[i]) at index i
+	*/
+
+	private BigInteger[] apply(BigInteger[] in, UnaryOperator<BigInteger> op) {
+
+		BigInteger[] out = new BigInteger[in.length];
+
+		if (in.length <= chunkSize) {
+			new Chunk(in, out, op, 0, in.length).compute();
+			return out;
+		}
+
+		if (executor instanceof ForkJoinPool) {
+			((ForkJoinPool) executor).invoke(new Chunk(in, out, op, 0, in.length));
+			return out;
+		}
+
+		List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+		for (int from = 0; from < in.length; from += chunkSize) {
+			final Chunk chunk = new Chunk(in, out, op, from, Math.min(from + chunkSize, in.length));
+			tasks.add(() -> {
+				chunk.compute();
+				return null;
+			});
+		}
+
+		try {
+			for (Future<Void> f : executor.invokeAll(tasks))
+				f.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("batch interrupted", e);
+		} catch (ExecutionException e) {
+			throw new IllegalStateException("batch failed", e.getCause());
+		}
+		return out;
+	}
+
+
+	/**
+	* Range [from, to) of a batch. Splits itself in halves on a fork/join
+	* pool until the range is at most one chunk.
+	*/
+
+	@SuppressWarnings("serial")
+	private class Chunk extends RecursiveAction {
+
+		private final BigInteger[] in, out;
+
+		private final UnaryOperator<BigInteger> op;
+
+		private final int from, to;
+
+
+		Chunk(BigInteger[] inVal, BigInteger[] outVal, UnaryOperator<BigInteger> opVal, int fromVal, int toVal) {
+
+			in = inVal;
+			out = outVal;
+			op = opVal;
+			from = fromVal;
+			to = toVal;
+		}
+
+
+		@Override
+		protected void compute() {
+
+			if (to - from <= chunkSize || getPool() == null) {
+				for (int i = from; i < to; i++)
+					out[i] = op.apply(in[i]);
+				return;
+			}
+
+			int middle = (from + to) >>> 1;
+			invokeAll(new Chunk(in, out, op, from, middle), new Chunk(in, out, op, middle, to));
+		}
+	}
+}
@@ -0,0 +1,348 @@
+/*
+* Benchmark suite for key generation, encryption, decryption and the
+* homomorphic operations of both schemes at |n| = 512, 1024, 1536, 2048.
+*
+* A small harness in the manner of JMH, which this tree cannot use since it
+* has no build file to declare the dependency in:
+*
+*  - every operation runs warmup iterations and then measurement
+*    iterations of a fixed duration, on fresh inputs drawn from a pool;
+*  - throughput mode: operations per second per iteration, mean and
+*    standard deviation over the measurement iterations;
+*  - sample-time mode: the duration of every single operation, reported
+*    as p50, p90, p99 and max;
+*  - allocation: bytes allocated by the benchmark thread per operation
+*    (com.sun.management.ThreadMXBean) and the resulting rate in MB/s;
+*  - results are consumed by a sink so that the JIT cannot drop the work.
+*
+* Both modes are taken from the same measurement run: the timer overhead
+* (tens of ns) is negligible against the microseconds to seconds per
+* operation measured here.
+*
+* Usage:
+*
+*      java PaillierBenchmark [-wi warmupIterations] [-i iterations] [-t iterationMillis]
+*                             [-sizes 512,1024,1536,2048] [-ops Encryption,mEncryption,...]
+*
+*/
+
+//used for mathematical operation
+import java.math.BigInteger;
+
+//allocation counter of the current thread
+import java.lang.management.ManagementFactory;
+
+//used for Arrays implementation
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.IntFunction;
+
+
+public class PaillierBenchmark {
+
+	private static final String[] OPERATIONS = { "KeyGeneration", "mKeyGeneration", "Encryption", "mEncryption",
+			"Decryption", "CRTDecryption", "mDecryption", "mCRTDecryption", "HomomorphicAddition",
+			"HomomorphicMultiplication" };
+
+	/**
+	* number of distinct inputs each operation cycles through.
+	*/
+
+	private static final int INPUTS = 64;
+
+	private static final int CERTAINTY = 64;
+
+
+	private final int warmupIterations, iterations;
+
+	private final long iterationNanos;
+
+
+	/**
+	* consumes every result so that no operation is optimized away.
+	*/
+
+	private static volatile int sink;
+
+
+	/**
+	* @param warmupIterationsVal iterations run before measuring
+	* @param iterationsVal measured iterations
+	* @param iterationMillis duration of one iteration; at least one operation runs per iteration
+	*/
+
+	public PaillierBenchmark(int warmupIterationsVal, int iterationsVal, long iterationMillis) {
+
+		warmupIterations = warmupIterationsVal;
+		iterations = iterationsVal;
+		iterationNanos = iterationMillis * 1000000L;
+	}
+
+
+	/**
+	* Result of one operation at one key size.
+	*/
+
+	public static class Result {
+
+		public final String operation;
+
+		public final int bits;
+
+		public final double opsPerSecond, opsPerSecondDeviation;
+
+		public final long p50, p90, p99, max;
+
+		public final double bytesPerOp;
+
+		Result(String operationVal, int bitsVal, double[] throughput, long[] samples, int sampleCount,
+				double bytesPerOpVal) {
+
+			operation = operationVal;
+			bits = bitsVal;
+
+			double mean = 0;
+			for (double t : throughput)
+				mean += t;
+			mean /= throughput.length;
+
+			double variance = 0;
+			for (double t : throughput)
+				variance += (t - mean) * (t - mean);
+
+			opsPerSecond = mean;
+			opsPerSecondDeviation = throughput.length > 1 ? Math.sqrt(variance / (throughput.length - 1)) : 0;
+
+			long[] sorted = Arrays.copyOf(samples, sampleCount);
+			Arrays.sort(sorted);
+			p50 = percentile(sorted, 0.50);
+			p90 = percentile(sorted, 0.90);
+			p99 = percentile(sorted, 0.99);
+			max = sorted[sorted.length - 1];
+
+			bytesPerOp = bytesPerOpVal;
+		}
+
+		private static long percentile(long[] sorted, double fraction) {
+
+			return sorted[Math.min(sorted.length - 1, (int) Math.ceil(fraction * sorted.length) - 1)];
+		}
+
+		/**
+		* @return allocation rate in MB/s at the measured throughput
+		*/
+
+		public double allocationRate() {
+			return bytesPerOp * opsPerSecond / (1 << 20);
+		}
+
+		@Override
+		public String toString() {
+
+			return String.format("%-26s %5d %14.3f +- %-10.3f %12.1f %12.1f %12.1f %12.1f %14.0f %10.1f",
+					operation, bits, opsPerSecond, opsPerSecondDeviation, p50 / 1e3, p90 / 1e3, p99 / 1e3,
+					max / 1e3, bytesPerOp, allocationRate());
+		}
+	}
+
+
+	/**
+	* Runs the selected operations at every key size and prints one line each.
+	* @param sizes key sizes |n| in bits
+	* @param operations names out of OPERATIONS
+	* @return the results in run order
+	*/
+
+	public List<Result> run(int[] sizes, String[] operations) {
+
+		List<Result> results = new ArrayList<Result>();
+
+		System.out.println(String.format("%-26s %5s %27s %12s %12s %12s %12s %14s %10s", "Benchmark", "|n|",
+				"Throughput (ops/s)", "p50 (us)", "p90 (us)", "p99 (us)", "max (us)", "alloc (B/op)", "MB/s"));
+
+		for (int bits : sizes) {
+
+			Map<String, IntFunction<Object>> benchmarks = benchmarks(bits);
+
+			for (String name : operations) {
+
+				IntFunction<Object> operation = benchmarks.get(name);
+				if (operation == null)
+					throw new IllegalArgumentException("unknown operation " + name);
+
+				Result result = measure(name, bits, operation);
+				results.add(result);
+				System.out.println(result);
+			}
+		}
+		return results;
+	}
+
+
+	/**
+	* The operations at one key size, each on its own pre-generated inputs.
+	*/
+
+	private static Map<String, IntFunction<Object>> benchmarks(int bits) {
+
+		RandomnessProvider random = RandomnessProvider.seeded(bits);
+
+		Paillier standard = new Paillier(bits, CERTAINTY, random);
+
+		Paillier modified = new Paillier(random);
+		modified.mKeyGeneration(bits, CERTAINTY);
+
+		//instance whose keys are regenerated by the key generation benchmarks,
+		//with the default randomness so that primes are searched in parallel
+		Paillier scratch = new Paillier(bits, CERTAINTY);
+
+		BigInteger[] m = new BigInteger[INPUTS], k = new BigInteger[INPUTS];
+		BigInteger[] c = new BigInteger[INPUTS], mc = new BigInteger[INPUTS];
+
+		for (int i = 0; i < INPUTS; i++) {
+			m[i] = random.nextBigInteger(32);
+			k[i] = random.nextBigInteger(bits - 1);
+			c[i] = standard.Encryption(m[i]);
+			mc[i] = modified.mEncryption(m[i]);
+		}
+
+		Map<String, IntFunction<Object>> benchmarks = new LinkedHashMap<String, IntFunction<Object>>();
+
+		benchmarks.put("KeyGeneration", i -> {
+			scratch.KeyGeneration(bits, CERTAINTY);
+			return scratch.n;
+		});
+		benchmarks.put("mKeyGeneration", i -> {
+			scratch.mKeyGeneration(bits, CERTAINTY);
+			return scratch.n;
+		});
+		benchmarks.put("Encryption", i -> standard.Encryption(m[i % INPUTS]));
+		benchmarks.put("mEncryption", i -> modified.mEncryption(m[i % INPUTS]));
+		benchmarks.put("Decryption", i -> standard.Decryption(c[i % INPUTS]));
+		benchmarks.put("CRTDecryption", i -> standard.CRTDecryption(c[i % INPUTS]));
+		benchmarks.put("mDecryption", i -> modified.mDecryption(mc[i % INPUTS]));
+		benchmarks.put("mCRTDecryption", i -> modified.mCRTDecryption(mc[i % INPUTS]));
+		benchmarks.put("HomomorphicAddition", i -> standard.HomomorphicAddition(c[i % INPUTS], c[(i + 1) % INPUTS]));
+		benchmarks.put("HomomorphicMultiplication", i -> standard.HomomorphicMultiplication(c[i % INPUTS], k[i % INPUTS]));
+
+		return benchmarks;
+	}
+
+
+	/**
+	* Warmup and measurement of one operation.
+	*/
+
+	private Result measure(String name, int bits, IntFunction<Object> operation) {
+
+		int index = 0;
+		long warmupOperations = 0;
+
+		for (int w = 0; w < warmupIterations; w++) {
+			long end = System.nanoTime() + iterationNanos;
+			do {
+				sink += operation.apply(index++).hashCode();
+				warmupOperations++;
+			} while (System.nanoTime() < end);
+		}
+
+		//presized from the warmup rate, so that it rarely grows while measuring
+		long expected = warmupIterations == 0 ? 0 : 2 * warmupOperations / warmupIterations * iterations;
+		long[] samples = new long[(int) Math.min(Math.max(1024, expected), 1 << 24)];
+
+		double[] throughput = new double[iterations];
+		int sampleCount = 0;
+		long operations = 0;
+		long excludedBytes = 0;
+		long allocatedBefore = allocatedBytes();
+
+		for (int it = 0; it < iterations; it++) {
+
+			long start = System.nanoTime(), now = start;
+			long count = 0;
+
+			do {
+				long before = now;
+				sink += operation.apply(index++).hashCode();
+				now = System.nanoTime();
+
+				samples[sampleCount++] = now - before;
+				count++;
+
+				//growing the samples is neither timed nor counted as allocation
+				if (sampleCount == samples.length) {
+					long bytesBefore = allocatedBytes();
+					samples = Arrays.copyOf(samples, 2 * samples.length);
+					excludedBytes += allocatedBytes() - bytesBefore;
+					long resumed = System.nanoTime();
+					start += resumed - now;
+					now = resumed;
+				}
+			} while (now - start < iterationNanos);
+
+			throughput[it] = count * 1e9 / (now - start);
+			operations += count;
+		}
+
+		long allocated = allocatedBytes() - allocatedBefore - excludedBytes;
+		double bytesPerOp = allocated < 0 ? Double.NaN : (double) allocated / operations;
+
+		return new Result(name, bits, throughput, samples, sampleCount, bytesPerOp);
+	}
+
+
+	/**
+	* bytes allocated so far by the current thread, or -1 if the JVM
+	* does not count them.
+	*/
+
+	private static long allocatedBytes() {
+
+		java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		if (bean instanceof com.sun.management.ThreadMXBean) {
+			com.sun.management.ThreadMXBean counter = (com.sun.management.ThreadMXBean) bean;
+			if (counter.isThreadAllocatedMemorySupported() && counter.isThreadAllocatedMemoryEnabled())
+				return counter.getThreadAllocatedBytes(Thread.currentThread().getId());
+		}
+		return -1;
+	}
+
+
+	public static void main(String[] args) {
+
+		int warmup = 2, iterations = 5;
+		long millis = 1000;
+		int[] sizes = { 512, 1024, 1536, 2048 };
+		String[] operations = OPERATIONS;
+
+		for (int i = 0; i + 1 < args.length; i += 2) {
+			switch (args[i]) {
+				case "-wi":
+					warmup = Integer.parseInt(args[i + 1]);
+					break;
+				case "-i":
+					iterations = Integer.parseInt(args[i + 1]);
+					break;
+				case "-t":
+					millis = Long.parseLong(args[i + 1]);
+					break;
+				case "-sizes":
+					sizes = Arrays.stream(args[i + 1].split(",")).mapToInt(Integer::parseInt).toArray();
+					break;
+				case "-ops":
+					operations = args[i + 1].split(",");
+					break;
+				default:
+					throw new IllegalArgumentException("unknown option " + args[i]);
+			}
+		}
+
+		if (iterations < 1)
+			throw new IllegalArgumentException("at least one measurement iteration is required");
+
+		new PaillierBenchmark(warmup, iterations, millis).run(sizes, operations);
+	}
+}
@@ -0,0 +1,518 @@
+/*
+* Non-interactive command line for batch jobs, run by Paillier.main when
+* arguments are given.
+*
+*      keygen   --key FILE [--bits 2048] [--modified] [--public FILE] [--table BYTES]
+*      encrypt  --key FILE [options]      plaintexts  -> ciphertexts (Encryption)
+*      mencrypt --key FILE [options]      plaintexts  -> ciphertexts (mEncryption)
+*      decrypt  --key FILE [options]      ciphertexts -> plaintexts  (CRTDecryption)
+*      mdecrypt --key FILE [options]      ciphertexts -> plaintexts  (mCRTDecryption)
+*      sum      --key FILE [options]      ciphertexts -> one ciphertext of their sum
+*
+* options:
+*      --in FILE|-          input, default stdin
+*      --out FILE|-         output, default stdout
+*      --in-format  text|binary
+*      --out-format text|binary
+*                           text is one decimal number per line; binary is the
+*                           CiphertextCodec format (header, fixed-width records)
+*      --modified           ciphertexts of sum belong to the modified scheme
+*      --threads N          worker threads, default: available processors
+*      --batch N            records per task, default 256
+*
+* Pipeline: the calling thread reads batches of records and submits each
+* to the worker pool; a writer thread takes the results in submission order
+* and writes them. At most 2 * threads batches are in flight, so memory
+* stays constant whatever the input size, and the output keeps the order
+* of the input.
+*
+*/
+
+//used for mathematical operation
+import java.math.BigInteger;
+
+//perform input and output stuff
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+//used for the options
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+//worker pool and the ordered queue of batches
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+
+public class PaillierCLI {
+
+	private static final int DEFAULT_BATCH = 256;
+
+	private static final int BUFFER_SIZE = 1 << 16;
+
+	private static final Future<BigInteger[]> END = CompletableFuture.completedFuture(null);
+
+
+	private final Map<String, String> options;
+
+	private final String command;
+
+
+	private PaillierCLI(String commandVal, Map<String, String> optionsVal) {
+
+		command = commandVal;
+		options = optionsVal;
+	}
+
+
+	/**
+	* Runs one command.
+	* @param args command and options, see the class comment
+	* @return exit status, 0 on success
+	*/
+
+	public static int run(String[] args) {
+
+		if (args.length == 0 || args[0].equals("--help")) {
+			usage();
+			return args.length == 0 ? 2 : 0;
+		}
+
+		Map<String, String> options = new HashMap<String, String>();
+		for (int i = 1; i < args.length; i++) {
+
+			if (!args[i].startsWith("--")) {
+				System.err.println("unexpected argument " + args[i]);
+				return 2;
+			}
+
+			//flags without a value
+			if (args[i].equals("--modified")) {
+				options.put("modified", "true");
+				continue;
+			}
+
+			if (i + 1 == args.length) {
+				System.err.println("missing value of " + args[i]);
+				return 2;
+			}
+			options.put(args[i].substring(2), args[++i]);
+		}
+
+		try {
+			new PaillierCLI(args[0], options).execute();
+			return 0;
+		} catch (IllegalArgumentException | IOException e) {
+			System.err.println(e.getMessage());
+			return 1;
+		}
+	}
+
+
+	private static void usage() {
+
+		System.err.println("usage: java Paillier keygen   --key FILE [--bits 2048] [--modified] [--public FILE] [--table BYTES]");
+		System.err.println("       java Paillier encrypt|mencrypt|decrypt|mdecrypt|sum --key FILE [--in FILE|-] [--out FILE|-]");
+		System.err.println("                     [--in-format text|binary] [--out-format text|binary] [--modified]");
+		System.err.println("                     [--threads N] [--batch N]");
+	}
+
+
+	private void execute() throws IOException {
+
+		if (command.equals("keygen")) {
+			keyGeneration();
+			return;
+		}
+
+		Paillier key = Paillier.ImportKey(required("key"));
+
+		if (command.startsWith("m") && !key.IsModified())
+			throw new IllegalArgumentException(command + " needs a key of the modified scheme (keygen --modified)");
+		if (command.endsWith("decrypt") && !key.HasPrivateKey())
+			throw new IllegalArgumentException(command + " needs the private key");
+
+		Function<BigInteger[], BigInteger[]> task;
+		boolean modified = options.containsKey("modified");
+
+		switch (command) {
+			case "encrypt":
+				task = batch -> map(batch, key::Encryption);
+				modified = false;
+				break;
+			case "mencrypt":
+				task = batch -> map(batch, key::mEncryption);
+				modified = true;
+				break;
+			case "decrypt":
+				task = batch -> map(batch, key::CRTDecryption);
+				modified = false;
+				break;
+			case "mdecrypt":
+				task = batch -> map(batch, key::mCRTDecryption);
+				modified = true;
+				break;
+			case "sum":
+				task = batch -> new BigInteger[] { product(key, batch) };
+				break;
+			default:
+				throw new IllegalArgumentException("unknown command " + command);
+		}
+
+		CiphertextCodec codec = new CiphertextCodec(key,
+				modified ? CiphertextCodec.Scheme.MODIFIED : CiphertextCodec.Scheme.STANDARD);
+
+		boolean ciphertextInput = !command.endsWith("encrypt");
+		boolean ciphertextOutput = !command.endsWith("decrypt");
+
+		boolean binaryIn = binary("in-format");
+		boolean binaryOut = binary("out-format");
+
+		if (binaryIn && !ciphertextInput || binaryOut && !ciphertextOutput)
+			throw new IllegalArgumentException("the binary format holds ciphertexts only");
+
+		int threads = Integer.parseInt(options.getOrDefault("threads",
+				String.valueOf(Runtime.getRuntime().availableProcessors())));
+		int batchSize = Integer.parseInt(options.getOrDefault("batch", String.valueOf(DEFAULT_BATCH)));
+		if (threads < 1 || batchSize < 1)
+			throw new IllegalArgumentException("threads and batch must be positive");
+
+		try (InputStream in = open(options.getOrDefault("in", "-"));
+				OutputStream out = create(options.getOrDefault("out", "-"))) {
+
+			//plaintexts must lie in [0, n)
+			RecordReader reader = binaryIn ? binaryReader(in, codec) : textReader(in, ciphertextInput ? null : key.n);
+			RecordWriter writer = binaryOut ? binaryWriter(out, codec) : textWriter(out);
+
+			if (command.equals("sum")) {
+				BigInteger[] total = { BigInteger.ONE };
+				pipeline(reader, task, partial -> total[0] = key.HomomorphicAddition(total[0], partial[0]),
+						threads, batchSize);
+				writer.write(total[0]);
+			} else {
+				pipeline(reader, task, results -> {
+					for (BigInteger result : results)
+						writer.write(result);
+				}, threads, batchSize);
+			}
+			writer.flush();
+		}
+	}
+
+
+	/**
+	* Generates a key and writes it, with its acceleration state, to --key,
+	* and optionally the public key alone to --public.
+	*/
+
+	private void keyGeneration() throws IOException {
+
+		int bits = Integer.parseInt(options.getOrDefault("bits", "2048"));
+
+		//one key generation, of the wanted scheme
+		Paillier key = new Paillier(RandomnessProvider.secure());
+		if (options.containsKey("modified"))
+			key.mKeyGeneration(bits, 64);
+		else
+			key.KeyGeneration(bits, 64);
+
+		boolean table = options.containsKey("table");
+		if (table)
+			key.FixedBasePrecomputation(Long.parseLong(options.get("table")));
+
+		key.ExportKey(required("key"), true, table);
+
+		if (options.containsKey("public"))
+			key.ExportKey(options.get("public"), false, table);
+	}
+
+
+	/**
+	* Reads batches, runs them on the worker pool and hands their results
+	* to sink in input order. At most 2 * threads batches are in flight.
+	*/
+
+	private static void pipeline(RecordReader reader, Function<BigInteger[], BigInteger[]> task,
+			ResultSink sink, int threads, int batchSize) throws IOException {
+
+		ExecutorService workers = Executors.newFixedThreadPool(threads, runnable -> {
+			Thread thread = new Thread(runnable, "paillier-cli-worker");
+			thread.setDaemon(true);
+			return thread;
+		});
+
+		//futures in submission order, END marks the end of the input
+		BlockingQueue<Future<BigInteger[]>> inFlight = new ArrayBlockingQueue<Future<BigInteger[]>>(2 * threads);
+		Throwable[] writeFailure = new Throwable[1];
+		boolean[] finished = { false };
+
+		Thread writer = new Thread(() -> {
+			try {
+				while (true) {
+					Future<BigInteger[]> next = inFlight.take();
+					if (next == END) {
+						finished[0] = true;
+						return;
+					}
+					sink.accept(next.get());
+				}
+			} catch (ExecutionException e) {
+				writeFailure[0] = e.getCause();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			} catch (Throwable e) {
+				//also a RuntimeException of the sink or a cancelled batch
+				writeFailure[0] = e;
+			} finally {
+				workers.shutdownNow();
+			}
+		}, "paillier-cli-writer");
+		writer.setDaemon(true);
+		writer.start();
+
+		try {
+			Future<BigInteger[]> next;
+			do {
+				BigInteger[] batch = reader.read(batchSize);
+				next = batch.length == 0 ? END : workers.submit(() -> task.apply(batch));
+
+				//blocks while 2 * threads batches are in flight; stops if the writer failed
+				while (!inFlight.offer(next, 100, TimeUnit.MILLISECONDS))
+					if (!writer.isAlive())
+						break;
+			} while (next != END && writer.isAlive());
+
+			writer.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("interrupted", e);
+		} finally {
+			//stops the writer too if reading failed
+			writer.interrupt();
+			workers.shutdownNow();
+		}
+
+		//join() orders the writer's fields before these reads
+		Throwable failure = writeFailure[0];
+		if (failure instanceof IOException)
+			throw (IOException) failure;
+		if (failure != null)
+			throw new IOException(failure.toString(), failure);
+		if (!finished[0])
+			throw new IOException("output incomplete: the writer stopped before the end of the input");
+	}
+
+
+	private static BigInteger[] map(BigInteger[] batch, Function<BigInteger, BigInteger> operation) {
+
+		BigInteger[] result = new BigInteger[batch.length];
+		for (int i = 0; i < batch.length; i++)
+			result[i] = operation.apply(batch[i]);
+		return result;
+	}
+
+
+	private static BigInteger product(Paillier key, BigInteger[] batch) {
+
+		BigInteger product = BigInteger.ONE;
+		for (BigInteger c : batch)
+			product = key.HomomorphicAddition(product, c);
+		return product;
+	}
+
+
+	/**
+	* source of input records.
+	*/
+
+	private interface RecordReader {
+
+		/**
+		* @return up to max records, an empty array at the end of the input
+		*/
+
+		BigInteger[] read(int max) throws IOException;
+	}
+
+
+	/**
+	* destination of output records.
+	*/
+
+	private interface RecordWriter {
+
+		void write(BigInteger value) throws IOException;
+
+		void flush() throws IOException;
+	}
+
+
+	/**
+	* consumer of the results of one batch.
+	*/
+
+	private interface ResultSink {
+
+		void accept(BigInteger[] results) throws IOException;
+	}
+
+
+	/**
+	* @param limit numbers must lie in [0, limit), null for any number
+	*/
+
+	private static RecordReader textReader(InputStream in, BigInteger limit) {
+
+		BufferedReader lines = new BufferedReader(new InputStreamReader(in, StandardCharsets.US_ASCII), BUFFER_SIZE);
+		long[] lineNumber = { 0 };
+
+		return max -> {
+			List<BigInteger> batch = new ArrayList<BigInteger>(max);
+			String line;
+			while (batch.size() < max && (line = lines.readLine()) != null) {
+				lineNumber[0]++;
+				line = line.trim();
+				if (line.isEmpty())
+					continue;
+				BigInteger value;
+				try {
+					value = new BigInteger(line);
+				} catch (NumberFormatException e) {
+					throw new IOException("line " + lineNumber[0] + " is not a number");
+				}
+				if (limit != null && (value.signum() < 0 || value.compareTo(limit) >= 0))
+					throw new IOException("line " + lineNumber[0] + " is outside [0, n)");
+				batch.add(value);
+			}
+			return batch.toArray(new BigInteger[0]);
+		};
+	}
+
+
+	private static RecordReader binaryReader(InputStream in, CiphertextCodec codec) throws IOException {
+
+		DataInputStream data = new DataInputStream(in);
+
+		byte[] header = new byte[CiphertextCodec.HEADER_SIZE];
+		try {
+			data.readFully(header);
+		} catch (EOFException e) {
+			throw new IOException("input has no ciphertext header");
+		}
+		codec.checkHeader(ByteBuffer.wrap(header));
+
+		int width = codec.getWidth();
+
+		return max -> {
+			List<BigInteger> batch = new ArrayList<BigInteger>(max);
+			byte[] record = new byte[width];
+			while (batch.size() < max) {
+				int read = data.readNBytes(record, 0, width);
+				if (read == 0)
+					break;
+				if (read < width)
+					throw new IOException("input ends inside a ciphertext record");
+				batch.add(codec.decode(record, 0));
+			}
+			return batch.toArray(new BigInteger[0]);
+		};
+	}
+
+
+	private static RecordWriter textWriter(OutputStream out) {
+
+		return new RecordWriter() {
+
+			public void write(BigInteger value) throws IOException {
+				out.write(value.toString().getBytes(StandardCharsets.US_ASCII));
+				out.write('\n');
+			}
+
+			public void flush() throws IOException {
+				out.flush();
+			}
+		};
+	}
+
+
+	private static RecordWriter binaryWriter(OutputStream out, CiphertextCodec codec) throws IOException {
+
+		ByteBuffer header = ByteBuffer.allocate(CiphertextCodec.HEADER_SIZE);
+		codec.writeHeader(header);
+		out.write(header.array());
+
+		byte[] record = new byte[codec.getWidth()];
+
+		return new RecordWriter() {
+
+			public void write(BigInteger value) throws IOException {
+				codec.encode(value, record, 0);
+				out.write(record);
+			}
+
+			public void flush() throws IOException {
+				out.flush();
+			}
+		};
+	}
+
+
+	private static InputStream open(String name) throws IOException {
+
+		InputStream in = name.equals("-") ? System.in : new FileInputStream(name);
+		return new BufferedInputStream(in, BUFFER_SIZE);
+	}
+
+
+	private static OutputStream create(String name) throws IOException {
+
+		if (name.equals("-")) {
+			//stdout is flushed, but not closed, at the end
+			return new BufferedOutputStream(System.out, BUFFER_SIZE) {
+				@Override
+				public void close() throws IOException {
+					flush();
+				}
+			};
+		}
+		return new BufferedOutputStream(new FileOutputStream(name), BUFFER_SIZE);
+	}
+
+
+	private boolean binary(String option) {
+
+		String format = options.getOrDefault(option, "text");
+		if (!format.equals("text") && !format.equals("binary"))
+			throw new IllegalArgumentException("--" + option + " must be text or binary");
+		return format.equals("binary");
+	}
+
+
+	private String required(String option) {
+
+		String value = options.get(option);
+		if (value == null)
+			throw new IllegalArgumentException("--" + option + " is required");
+		return value;
+	}
+}
@@ -0,0 +1,457 @@
+/*
+* Keys of many tenants, stored by fingerprint, with a bounded cache of
+* ready-to-use Paillier instances.
+*
+* Every key is kept as its compact ExportKey record (no table), a few KB
+* at most. The first get() of a key builds its acceleration context: the
+* key is imported, with its CRT constants and mu, and
+* a fixed-base table of g of tableBytes is precomputed if configured.
+* Contexts are kept in an LRU cache whose total weight, the record size
+* plus the table size, stays below the memory budget; the least recently
+* used contexts are evicted first, the records stay. The metrics of a key
+* (PaillierMetrics) live as long as its context: they are dropped, and
+* their MXBeans unregistered, on eviction, and start over when the context
+* is built again.
+*
+* Concurrency: lookups take a short lock on the LRU order only. A missing
+* context is built outside of it, once: concurrent get() calls of the same
+* key wait for the same build.
+*
+* Startup: warmUp(fingerprints) builds the contexts of the hot tenants in
+* parallel; hottest(k), saved at shutdown, gives the list to warm up.
+*
+* Contexts are shared by all callers and must not be regenerated
+* (KeyGeneration, mKeyGeneration).
+*
+*/
+
+//perform input and output stuff
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+//used for the records and the LRU order
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+
+//statistics
+import java.util.concurrent.atomic.LongAdder;
+
+
+public class PaillierKeyRing {
+
+	/**
+	* exported key records by fingerprint in hex.
+	*/
+
+	private final ConcurrentHashMap<String, byte[]> records = new ConcurrentHashMap<String, byte[]>();
+
+	/**
+	* built contexts, least recently used first; guarded by itself.
+	*/
+
+	private final LinkedHashMap<String, Context> cache = new LinkedHashMap<String, Context>(16, 0.75f, true);
+
+	/**
+	* contexts being built.
+	*/
+
+	private final ConcurrentHashMap<String, CompletableFuture<Context>> building =
+			new ConcurrentHashMap<String, CompletableFuture<Context>>();
+
+	private final long memoryBudget, tableBytes;
+
+	/**
+	* total weight of the cached contexts; guarded by cache.
+	*/
+
+	private long weight;
+
+	private final LongAdder hits = new LongAdder(), misses = new LongAdder(), evictions = new LongAdder(),
+			loadNanos = new LongAdder();
+
+
+	/**
+	* @param memoryBudgetVal upper bound of the total weight of the cached contexts in bytes
+	* @param tableBytesVal fixed-base table budget per key, 0 for no tables
+	*/
+
+	public PaillierKeyRing(long memoryBudgetVal, long tableBytesVal) {
+
+		if (memoryBudgetVal <= 0 || tableBytesVal < 0)
+			throw new IllegalArgumentException("memory budget must be positive and table bytes not negative");
+
+		memoryBudget = memoryBudgetVal;
+		tableBytes = tableBytesVal;
+	}
+
+
+	/**
+	* Adds a key, with its private part if it has one. A key with the same
+	* fingerprint is replaced and its cached context dropped.
+	* @param key the key
+	* @return fingerprint of the key
+	*/
+
+	public byte[] add(Paillier key) {
+
+		ByteArrayOutputStream record = new ByteArrayOutputStream();
+		try {
+			key.ExportKey(record, key.HasPrivateKey(), false);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+
+		byte[] fingerprint = key.Fingerprint();
+		put(hex(fingerprint), record.toByteArray());
+		return fingerprint;
+	}
+
+
+	/**
+	* Adds a key from its ExportKey record; a table in the record is ignored.
+	* @param record key as written by ExportKey
+	* @return fingerprint of the key
+	* @throws IOException if the record is not a key
+	*/
+
+	public byte[] add(byte[] record) throws IOException {
+
+		Paillier key = Paillier.ImportKey(new ByteArrayInputStream(record));
+		return add(key);
+	}
+
+
+	/**
+	* Removes a key, its cached context and its metrics.
+	* @param fingerprint fingerprint of the key
+	* @return true if the key was in the ring
+	*/
+
+	public boolean remove(byte[] fingerprint) {
+
+		String id = hex(fingerprint);
+		boolean removed = records.remove(id) != null;
+		invalidate(id);
+		PaillierMetrics.remove(fingerprint);
+		return removed;
+	}
+
+
+	/**
+	* @param fingerprint fingerprint of a key
+	* @return true if the key is in the ring
+	*/
+
+	public boolean contains(byte[] fingerprint) {
+
+		return records.containsKey(hex(fingerprint));
+	}
+
+
+	/**
+	* @return number of keys in the ring
+	*/
+
+	public int size() {
+
+		return records.size();
+	}
+
+
+	/**
+	* The ready-to-use key, built on a miss.
+	* @param fingerprint fingerprint of the key
+	* @return the shared context of the key
+	* @throws IllegalArgumentException if the key is not in the ring
+	*/
+
+	public Paillier get(byte[] fingerprint) {
+
+		String id = hex(fingerprint);
+
+		synchronized (cache) {
+			Context context = cache.get(id);
+			if (context != null) {
+				hits.increment();
+				return context.key;
+			}
+		}
+		misses.increment();
+
+		return load(id).key;
+	}
+
+
+	/**
+	* Builds the contexts of the given keys in parallel, e.g. of the hot
+	* tenants at startup, as far as the memory budget allows. Unknown keys
+	* are skipped. Does not count as hits or misses.
+	* @param fingerprints fingerprints of the keys, hottest first
+	* @return number of contexts built
+	*/
+
+	public int warmUp(Collection<byte[]> fingerprints) {
+
+		List<String> ids = new ArrayList<String>();
+		long expected = 0;
+		for (byte[] fingerprint : fingerprints) {
+			String id = hex(fingerprint);
+			byte[] record = records.get(id);
+			if (record == null)
+				continue;
+
+			//stop before the warm up would evict its own first keys
+			expected += record.length + tableBytes;
+			if (expected > memoryBudget && !ids.isEmpty())
+				break;
+			ids.add(id);
+		}
+
+		//built coldest first, so that the hottest end up most recently used
+		List<String> reversed = new ArrayList<String>(ids);
+		Collections.reverse(reversed);
+
+		LongAdder built = new LongAdder();
+		reversed.parallelStream().forEach(id -> {
+			synchronized (cache) {
+				if (cache.containsKey(id))
+					return;
+			}
+			if (records.containsKey(id)) {
+				load(id);
+				built.increment();
+			}
+		});
+		return built.intValue();
+	}
+
+
+	/**
+	* @param k maximum number of keys
+	* @return fingerprints of the most recently used cached keys, most
+	* recent first, e.g. to be saved at shutdown and passed to warmUp
+	*/
+
+	public List<byte[]> hottest(int k) {
+
+		List<String> ids;
+		synchronized (cache) {
+			ids = new ArrayList<String>(cache.keySet());
+		}
+
+		List<byte[]> result = new ArrayList<byte[]>();
+		for (int i = ids.size() - 1; i >= 0 && result.size() < k; i--)
+			result.add(unhex(ids.get(i)));
+		return result;
+	}
+
+
+	/**
+	* @return counters and cache occupancy
+	*/
+
+	public Stats stats() {
+
+		synchronized (cache) {
+			return new Stats(hits.sum(), misses.sum(), evictions.sum(), loadNanos.sum(), cache.size(), weight,
+					memoryBudget, records.size());
+		}
+	}
+
+
+	/**
+	* Builds the context of a key, or waits for the build already running,
+	* and caches it.
+	*/
+
+	private Context load(String id) {
+
+		CompletableFuture<Context> mine = new CompletableFuture<Context>();
+		CompletableFuture<Context> running = building.putIfAbsent(id, mine);
+		if (running != null)
+			return join(running);
+
+		try {
+			byte[] record = records.get(id);
+			if (record == null)
+				throw new IllegalArgumentException("no key with fingerprint " + id);
+
+			long start = System.nanoTime();
+			Paillier key = Paillier.ImportKey(new ByteArrayInputStream(record));
+			if (tableBytes > 0)
+				key.FixedBasePrecomputation(tableBytes);
+			Context context = new Context(key, record.length + key.TableBytes());
+			loadNanos.add(System.nanoTime() - start);
+
+			List<String> evicted = Collections.emptyList();
+			synchronized (cache) {
+				//the key may have been removed or replaced meanwhile
+				if (records.get(id) == record)
+					evicted = insert(id, context);
+			}
+			//JMX unregistration, outside of the cache lock
+			for (String old : evicted)
+				PaillierMetrics.remove(unhex(old));
+
+			mine.complete(context);
+			return context;
+
+		} catch (IOException e) {
+			//records are checked when added
+			UncheckedIOException failure = new UncheckedIOException("stored key " + id + " is corrupt", e);
+			mine.completeExceptionally(failure);
+			throw failure;
+		} catch (RuntimeException e) {
+			mine.completeExceptionally(e);
+			throw e;
+		} finally {
+			building.remove(id, mine);
+		}
+	}
+
+
+	private static Context join(CompletableFuture<Context> future) {
+
+		try {
+			return future.join();
+		} catch (CompletionException e) {
+			if (e.getCause() instanceof RuntimeException)
+				throw (RuntimeException) e.getCause();
+			throw e;
+		}
+	}
+
+
+	/**
+	* Caches a context and evicts least recently used ones beyond the budget;
+	* the context just inserted always stays. Called with the cache lock.
+	* @return the keys evicted
+	*/
+
+	private List<String> insert(String id, Context context) {
+
+		Context old = cache.put(id, context);
+		if (old != null)
+			weight -= old.weight;
+		weight += context.weight;
+
+		List<String> evicted = new ArrayList<String>();
+		Iterator<Map.Entry<String, Context>> eldest = cache.entrySet().iterator();
+		while (weight > memoryBudget && eldest.hasNext()) {
+			Map.Entry<String, Context> entry = eldest.next();
+			if (entry.getKey().equals(id))
+				continue;
+			weight -= entry.getValue().weight;
+			evicted.add(entry.getKey());
+			eldest.remove();
+			evictions.increment();
+		}
+		return evicted;
+	}
+
+
+	private void put(String id, byte[] record) {
+
+		records.put(id, record);
+		invalidate(id);
+	}
+
+
+	private void invalidate(String id) {
+
+		synchronized (cache) {
+			Context old = cache.remove(id);
+			if (old != null)
+				weight -= old.weight;
+		}
+	}
+
+
+	private static String hex(byte[] bytes) {
+
+		StringBuilder hex = new StringBuilder(2 * bytes.length);
+		for (byte b : bytes)
+			hex.append(String.format("%02x", b));
+		return hex.toString();
+	}
+
+
+	private static byte[] unhex(String hex) {
+
+		byte[] bytes = new byte[hex.length() / 2];
+		for (int i = 0; i < bytes.length; i++)
+			bytes[i] = (byte) Integer.parseInt(hex.substring(2 * i, 2 * i + 2), 16);
+		return bytes;
+	}
+
+
+	/**
+	* A built key and its weight in bytes.
+	*/
+
+	private static class Context {
+
+		final Paillier key;
+
+		final long weight;
+
+		Context(Paillier keyVal, long weightVal) {
+
+			key = keyVal;
+			weight = weightVal;
+		}
+	}
+
+
+	/**
+	* Snapshot of the counters of the ring.
+	*/
+
+	public static class Stats {
+
+		public final long hits, misses, evictions, loadNanos;
+
+		public final int cachedKeys, storedKeys;
+
+		public final long weight, memoryBudget;
+
+		Stats(long hitsVal, long missesVal, long evictionsVal, long loadNanosVal, int cachedKeysVal, long weightVal,
+				long memoryBudgetVal, int storedKeysVal) {
+
+			hits = hitsVal;
+			misses = missesVal;
+			evictions = evictionsVal;
+			loadNanos = loadNanosVal;
+			cachedKeys = cachedKeysVal;
+			weight = weightVal;
+			memoryBudget = memoryBudgetVal;
+			storedKeys = storedKeysVal;
+		}
+
+		/**
+		* @return hits / (hits + misses), 0 before the first get
+		*/
+
+		public double hitRate() {
+			long total = hits + misses;
+			return total == 0 ? 0 : (double) hits / total;
+		}
+
+		@Override
+		public String toString() {
+
+			return String.format("keys=%d cached=%d weight=%d/%d hits=%d misses=%d hitRate=%.3f evictions=%d loadMs=%.1f",
+					storedKeys, cachedKeys, weight, memoryBudget, hits, misses, hitRate(), evictions, loadNanos / 1e6);
+		}
+	}
+}
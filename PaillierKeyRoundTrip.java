@@ -0,0 +1,118 @@
+/*
+* Round trip of keys through key generation, ExportKey and ImportKey.
+*
+*      java PaillierKeyRoundTrip [bits 512]
+*
+* regenerates the keys of one instance in every order of the two schemes,
+*
+*      KeyGeneration, mKeyGeneration, KeyGeneration, KeyGeneration(g = n+1), mKeyGeneration
+*
+* and after every step exports the key (private and public, with and
+* without the fixed-base table), imports it again and checks that the
+* original and the imported key decrypt each other's ciphertexts with
+* every decryption of their scheme. A key must not keep any state of the
+* key generated before it on the same instance, e.g. the alpha of the
+* modified scheme after a standard KeyGeneration.
+*
+* Exits with status 1 on the first mismatch.
+*
+*/
+
+//used for mathematical operation
+import java.math.BigInteger;
+
+//perform input and output stuff
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+
+public class PaillierKeyRoundTrip {
+
+	private static final int CERTAINTY = 64;
+
+	private static final long TABLE_BYTES = 1 << 20;
+
+
+	public static void main(String[] args) throws IOException {
+
+		int bits = args.length > 0 ? Integer.parseInt(args[0]) : 512;
+
+		Paillier key = new Paillier(bits, CERTAINTY);
+		try {
+			check(key, "KeyGeneration", false);
+
+			key.mKeyGeneration(bits, CERTAINTY);
+			check(key, "mKeyGeneration after KeyGeneration", true);
+
+			key.KeyGeneration(bits, CERTAINTY);
+			check(key, "KeyGeneration after mKeyGeneration", false);
+
+			key.KeyGeneration(bits, CERTAINTY, true);
+			check(key, "KeyGeneration(g = n+1)", false);
+
+			key.mKeyGeneration(bits, CERTAINTY);
+			check(key, "mKeyGeneration after KeyGeneration(g = n+1)", true);
+
+		} catch (IllegalStateException e) {
+			System.out.println("FAILED " + e.getMessage());
+			System.exit(1);
+		}
+		System.out.println("all key round trips passed");
+	}
+
+
+	/**
+	* Exports and imports the current key in every form and checks decryption.
+	*/
+
+	private static void check(Paillier key, String step, boolean modified) throws IOException {
+
+		BigInteger m = BigInteger.valueOf(step.length() * 1000003L);
+
+		key.FixedBasePrecomputation(TABLE_BYTES);
+
+		Paillier full = roundTrip(key, true, true, step);
+		Paillier bare = roundTrip(key, true, false, step);
+		Paillier publicKey = roundTrip(key, false, true, step);
+
+		if (publicKey.HasPrivateKey())
+			throw new IllegalStateException(step + ": public key import holds a private key");
+		for (Paillier imported : new Paillier[] { full, bare, publicKey })
+			if (imported.IsModified() != modified)
+				throw new IllegalStateException(step + ": imported key has the wrong scheme");
+
+		for (Paillier sender : new Paillier[] { key, full, bare, publicKey })
+			for (Paillier receiver : new Paillier[] { key, full, bare }) {
+				if (modified) {
+					BigInteger c = sender.mEncryption(m);
+					expect(m, receiver.mDecryption(c), step, "mDecryption");
+					expect(m, receiver.mCRTDecryption(c), step, "mCRTDecryption");
+				}
+				BigInteger c = sender.Encryption(m);
+				expect(m, receiver.Decryption(c), step, "Decryption");
+				expect(m, receiver.CRTDecryption(c), step, "CRTDecryption");
+			}
+
+		System.out.println("ok   " + step);
+	}
+
+
+	private static Paillier roundTrip(Paillier key, boolean includePrivate, boolean includeTable, String step) {
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		try {
+			key.ExportKey(out, includePrivate, includeTable);
+			return Paillier.ImportKey(new ByteArrayInputStream(out.toByteArray()));
+		} catch (IOException e) {
+			throw new IllegalStateException(step + ": exported key does not import: " + e.getMessage(), e);
+		}
+	}
+
+
+	private static void expect(BigInteger expected, BigInteger actual, String step, String decryption) {
+
+		if (!expected.equals(actual))
+			throw new IllegalStateException(step + ": " + decryption + " gave " + actual + " instead of " + expected);
+	}
+}
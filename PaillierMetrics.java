@@ -0,0 +1,524 @@
+/*
+* Counters and latency histograms of the Paillier operations.
+*
+* Every operation of every key is recorded into its own OperationMetrics:
+* a call counter, a rejection counter (mEncryption with r >= 2^l), and a
+* log-linear latency histogram in the manner of HdrHistogram, with 8 linear
+* sub-buckets per power of two, i.e. at most 12.5% relative error, for
+* latencies from 1 ns to 2^62 ns.
+*
+* Recording never locks: every counter and every histogram bucket is a
+* LongAdder, which stripes its cells across threads under contention.
+* Buckets are created on their first latency, so a histogram holds only
+* the few buckets its latencies fall into, not all 488.
+* Key generation is recorded under the key "-", since the key does not exist
+* before; the other operations under the first 8 bytes of the key
+* fingerprint in hex, see Paillier.Fingerprint().
+*
+* Pull API : forKey(...).get(operation), or all() for every OperationMetrics.
+* JMX      : every OperationMetrics is registered as an MXBean named
+*            Paillier:type=Operation,key=<key>,scheme=<scheme>,name=<operation>.
+*
+* Recording costs two System.nanoTime() calls and two LongAdder updates,
+* below 1% of even the cheapest operation (HomomorphicAddition) at 1024 bits.
+* setEnabled(false) turns it off altogether.
+*
+*/
+
+//used for JMX registration
+import java.lang.management.ManagementFactory;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+//used for the registry
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+//striped counters
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+
+public final class PaillierMetrics {
+
+	/**
+	* Instrumented operations, each with the scheme it belongs to.
+	*/
+
+	public enum Operation {
+
+		KEY_GENERATION("KeyGeneration", "standard"),
+		M_KEY_GENERATION("mKeyGeneration", "modified"),
+		ENCRYPTION("Encryption", "standard"),
+		M_ENCRYPTION("mEncryption", "modified"),
+		DECRYPTION("Decryption", "standard"),
+		CRT_DECRYPTION("CRTDecryption", "standard"),
+		M_DECRYPTION("mDecryption", "modified"),
+		M_CRT_DECRYPTION("mCRTDecryption", "modified"),
+		HOMOMORPHIC_ADDITION("HomomorphicAddition", "both"),
+		HOMOMORPHIC_MULTIPLICATION("HomomorphicMultiplication", "both");
+
+		private final String label, scheme;
+
+		Operation(String labelVal, String schemeVal) {
+			label = labelVal;
+			scheme = schemeVal;
+		}
+
+		/**
+		* @return name of the Paillier method
+		*/
+
+		public String getLabel() {
+			return label;
+		}
+
+		/**
+		* @return "standard", "modified" or "both"
+		*/
+
+		public String getScheme() {
+			return scheme;
+		}
+	}
+
+
+	/**
+	* key label of key generation, which has no key yet.
+	*/
+
+	public static final String NO_KEY = "-";
+
+	private static volatile boolean enabled = true;
+
+	private static final ConcurrentHashMap<String, KeyMetrics> KEYS = new ConcurrentHashMap<String, KeyMetrics>();
+
+
+	private PaillierMetrics() {
+	}
+
+
+	/**
+	* @param on false stops all recording; counters keep their values
+	*/
+
+	public static void setEnabled(boolean on) {
+		enabled = on;
+	}
+
+
+	/**
+	* @return true if operations are recorded
+	*/
+
+	public static boolean isEnabled() {
+		return enabled;
+	}
+
+
+	/**
+	* @return start time for record(), 0 if recording is disabled
+	*/
+
+	static long start() {
+
+		return enabled ? System.nanoTime() : 0L;
+	}
+
+
+	/**
+	* Metrics of a key, created and registered with JMX on first use.
+	* @param fingerprint key fingerprint, or null for NO_KEY
+	* @return the metrics of the key
+	*/
+
+	public static KeyMetrics forKey(byte[] fingerprint) {
+
+		String key = fingerprint == null ? NO_KEY : label(fingerprint);
+		return KEYS.computeIfAbsent(key, KeyMetrics::new);
+	}
+
+
+	/**
+	* @return the metrics of every key and operation recorded so far
+	*/
+
+	public static List<OperationMetrics> all() {
+
+		List<OperationMetrics> result = new ArrayList<OperationMetrics>();
+		for (KeyMetrics keyMetrics : KEYS.values())
+			for (OperationMetrics operation : keyMetrics.operations)
+				if (operation.getCount() > 0 || operation.getRejections() > 0)
+					result.add(operation);
+		return result;
+	}
+
+
+	/**
+	* Drops the metrics of a key and unregisters its MXBeans, e.g. when the
+	* key is retired or PaillierKeyRing evicts its context.
+	* @param fingerprint key fingerprint
+	*/
+
+	public static void remove(byte[] fingerprint) {
+
+		KeyMetrics keyMetrics = KEYS.remove(label(fingerprint));
+		if (keyMetrics != null)
+			keyMetrics.unregister();
+	}
+
+
+	private static String label(byte[] fingerprint) {
+
+		StringBuilder hex = new StringBuilder();
+		for (int i = 0; i < Math.min(8, fingerprint.length); i++)
+			hex.append(String.format("%02x", fingerprint[i]));
+		return hex.toString();
+	}
+
+
+	/**
+	* Metrics of all operations of one key.
+	*/
+
+	public static final class KeyMetrics {
+
+		private final String key;
+
+		private final OperationMetrics[] operations;
+
+		/**
+		* set by PaillierMetrics.remove; holders look the key up again.
+		*/
+
+		private volatile boolean removed;
+
+
+		private KeyMetrics(String keyVal) {
+
+			key = keyVal;
+			operations = new OperationMetrics[Operation.values().length];
+			for (Operation operation : Operation.values())
+				operations[operation.ordinal()] = new OperationMetrics(key, operation);
+
+			register();
+		}
+
+
+		/**
+		* Records one call that started at start (from start()).
+		*/
+
+		void record(Operation operation, long start) {
+
+			if (start != 0L)
+				operations[operation.ordinal()].record(System.nanoTime() - start);
+		}
+
+
+		/**
+		* Counts one rejected input of the operation.
+		*/
+
+		void reject(Operation operation) {
+
+			if (enabled)
+				operations[operation.ordinal()].rejections.increment();
+		}
+
+
+		/**
+		* @param operation the operation
+		* @return its metrics for this key
+		*/
+
+		public OperationMetrics get(Operation operation) {
+			return operations[operation.ordinal()];
+		}
+
+
+		/**
+		* @return true once PaillierMetrics.remove dropped these metrics;
+		* they are no longer in all() nor registered with JMX
+		*/
+
+		public boolean isRemoved() {
+			return removed;
+		}
+
+
+		/**
+		* @return key label, NO_KEY or the fingerprint prefix in hex
+		*/
+
+		public String getKey() {
+			return key;
+		}
+
+
+		private void register() {
+
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			for (OperationMetrics operation : operations) {
+				try {
+					ObjectName name = operation.objectName();
+					if (!server.isRegistered(name))
+						server.registerMBean(operation, name);
+				} catch (JMException e) {
+					//metrics stay available through the pull API
+				}
+			}
+		}
+
+
+		private void unregister() {
+
+			removed = true;
+
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			for (OperationMetrics operation : operations) {
+				try {
+					server.unregisterMBean(operation.objectName());
+				} catch (JMException e) {
+					//not registered
+				}
+			}
+		}
+	}
+
+
+	/**
+	* JMX view of one operation of one key. Latencies in microseconds.
+	*/
+
+	public interface OperationMXBean {
+
+		String getKey();
+
+		String getScheme();
+
+		String getOperation();
+
+		long getCount();
+
+		long getRejections();
+
+		double getMeanMicros();
+
+		double getP50Micros();
+
+		double getP90Micros();
+
+		double getP99Micros();
+
+		double getP999Micros();
+
+		double getMaxMicros();
+
+		void reset();
+	}
+
+
+	/**
+	* Counters and latency histogram of one operation of one key.
+	*/
+
+	public static final class OperationMetrics implements OperationMXBean {
+
+		/**
+		* linear sub-buckets per power of two.
+		*/
+
+		private static final int SUB_BUCKETS = 8;
+
+		private static final int BUCKETS = 61 * SUB_BUCKETS;
+
+
+		private final String key;
+
+		private final Operation operation;
+
+		private final LongAdder count = new LongAdder(), totalNanos = new LongAdder(), rejections = new LongAdder();
+
+		private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+
+		/**
+		* histogram buckets, null until their first latency.
+		*/
+
+		private final AtomicReferenceArray<LongAdder> buckets = new AtomicReferenceArray<LongAdder>(BUCKETS);
+
+
+		private OperationMetrics(String keyVal, Operation operationVal) {
+
+			key = keyVal;
+			operation = operationVal;
+		}
+
+
+		private void record(long nanos) {
+
+			count.increment();
+			totalNanos.add(nanos);
+
+			int index = bucket(nanos);
+			LongAdder bucket = buckets.get(index);
+			if (bucket == null) {
+				buckets.compareAndSet(index, null, new LongAdder());
+				bucket = buckets.get(index);
+			}
+			bucket.increment();
+
+			if (nanos > maxNanos.get())
+				maxNanos.accumulate(nanos);
+		}
+
+
+		/**
+		* bucket of a latency: the exact value below 8, otherwise the power
+		* of two and the top 3 bits below its leading bit.
+		*/
+
+		private static int bucket(long nanos) {
+
+			if (nanos < SUB_BUCKETS)
+				return (int) Math.max(0, nanos);
+
+			int exponent = 63 - Long.numberOfLeadingZeros(nanos);
+			int index = (exponent - 2) * SUB_BUCKETS + (int) ((nanos >>> (exponent - 3)) & (SUB_BUCKETS - 1));
+			return Math.min(index, BUCKETS - 1);
+		}
+
+
+		/**
+		* smallest latency of a bucket.
+		*/
+
+		private static long lowerBound(int index) {
+
+			if (index < SUB_BUCKETS)
+				return index;
+
+			int exponent = index / SUB_BUCKETS + 2;
+			return (long) (SUB_BUCKETS + index % SUB_BUCKETS) << (exponent - 3);
+		}
+
+
+		/**
+		* @param fraction quantile in (0, 1]
+		* @return latency in nanoseconds below which the fraction of calls
+		* completed, the upper end of its bucket, 0 without calls
+		*/
+
+		public long percentileNanos(double fraction) {
+
+			long[] counts = new long[BUCKETS];
+			long total = 0;
+			for (int i = 0; i < BUCKETS; i++) {
+				LongAdder bucket = buckets.get(i);
+				counts[i] = bucket == null ? 0 : bucket.sum();
+				total += counts[i];
+			}
+			if (total == 0)
+				return 0;
+
+			long rank = Math.max(1, (long) Math.ceil(fraction * total));
+			long seen = 0;
+			for (int i = 0; i < BUCKETS; i++) {
+				seen += counts[i];
+				if (seen >= rank)
+					return i + 1 < BUCKETS ? Math.min(lowerBound(i + 1) - 1, maxNanos.get()) : maxNanos.get();
+			}
+			return maxNanos.get();
+		}
+
+
+		private ObjectName objectName() throws JMException {
+
+			return new ObjectName("Paillier:type=Operation,key=" + key + ",scheme=" + operation.getScheme()
+					+ ",name=" + operation.getLabel());
+		}
+
+
+		@Override
+		public String getKey() {
+			return key;
+		}
+
+		@Override
+		public String getScheme() {
+			return operation.getScheme();
+		}
+
+		@Override
+		public String getOperation() {
+			return operation.getLabel();
+		}
+
+		@Override
+		public long getCount() {
+			return count.sum();
+		}
+
+		@Override
+		public long getRejections() {
+			return rejections.sum();
+		}
+
+		@Override
+		public double getMeanMicros() {
+			long calls = count.sum();
+			return calls == 0 ? 0 : totalNanos.sum() / 1e3 / calls;
+		}
+
+		@Override
+		public double getP50Micros() {
+			return percentileNanos(0.50) / 1e3;
+		}
+
+		@Override
+		public double getP90Micros() {
+			return percentileNanos(0.90) / 1e3;
+		}
+
+		@Override
+		public double getP99Micros() {
+			return percentileNanos(0.99) / 1e3;
+		}
+
+		@Override
+		public double getP999Micros() {
+			return percentileNanos(0.999) / 1e3;
+		}
+
+		@Override
+		public double getMaxMicros() {
+			return maxNanos.get() / 1e3;
+		}
+
+		@Override
+		public void reset() {
+
+			count.reset();
+			totalNanos.reset();
+			rejections.reset();
+			maxNanos.reset();
+			for (int i = 0; i < BUCKETS; i++) {
+				LongAdder bucket = buckets.get(i);
+				if (bucket != null)
+					bucket.reset();
+			}
+		}
+
+		@Override
+		public String toString() {
+
+			return String.format("%s %s %s count=%d rejections=%d mean=%.1fus p50=%.1fus p99=%.1fus max=%.1fus",
+					key, operation.getScheme(), operation.getLabel(), getCount(), getRejections(),
+					getMeanMicros(), getP50Micros(), getP99Micros(), getMaxMicros());
+		}
+	}
+}
@@ -0,0 +1,557 @@
+/*
+* Embeddable local server for encryption, decryption and homomorphic
+* addition with one key.
+*
+* Protocol (big-endian, one request at a time per connection, any number
+* of requests per connection):
+*
+*      request  : byte op, int id, byte count, count * number
+*      response : int id, byte status, number (OK) or UTF message (otherwise)
+*      number   : int length, length bytes of BigInteger.toByteArray()
+*
+*      op     : ENCRYPT (1 plaintext), DECRYPT (1 ciphertext), ADD (2 ciphertexts)
+*      status : OK, OVERLOADED (request dropped, retry later), ERROR
+*
+* Every connection is served by its own thread: a virtual thread where the
+* JVM has them (Java 21+), a platform thread otherwise. Encryptions and
+* decryptions are not computed on the connection thread: they are queued,
+* and a batcher per operation collects the requests that arrive within the
+* batch window (or until maxBatch are collected) and runs them together
+* through PaillierBatch, i.e. in parallel on all cores and, for decryption,
+* with CRTDecryption. Homomorphic addition is a single multiplication and is
+* answered directly.
+*
+* Backpressure: each operation queue holds at most maxQueued requests.
+* A request that finds its queue full is answered with OVERLOADED at once,
+* so the latency of accepted requests stays bounded under overload.
+*
+*/
+
+//used for mathematical operation
+import java.math.BigInteger;
+
+//perform input and output stuff
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+
+//batching and connection threads
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.function.UnaryOperator;
+
+
+public class PaillierServer implements Closeable {
+
+	public static final byte ENCRYPT = 1, DECRYPT = 2, ADD = 3;
+
+	public static final byte OK = 0, OVERLOADED = 1, ERROR = 2;
+
+	public static final long DEFAULT_BATCH_WINDOW_MICROS = 500;
+
+	public static final int DEFAULT_MAX_BATCH = 256, DEFAULT_MAX_QUEUED = 8192;
+
+	/**
+	* numbers above this size are rejected, so that a broken client cannot
+	* make the server allocate arbitrary memory.
+	*/
+
+	private static final int MAX_NUMBER_BYTES = 1 << 16;
+
+	/**
+	* longest pause between retries of a failing accept.
+	*/
+
+	private static final long MAX_ACCEPT_BACKOFF_MILLIS = 1000;
+
+
+	private final Paillier paillier;
+
+	private final ServerSocket serverSocket;
+
+	private final Batcher encryption, decryption;
+
+	private final ThreadFactory connectionThreads;
+
+	private final Set<Socket> connections = ConcurrentHashMap.newKeySet();
+
+	private volatile boolean running = true;
+
+
+	/**
+	* Starts a server on a free loopback port with the default batching.
+	* @param paillierVal key of the server
+	* @throws IOException if the socket cannot be opened
+	*/
+
+	public PaillierServer(Paillier paillierVal) throws IOException {
+
+		this(paillierVal, new InetSocketAddress(InetAddress.getLoopbackAddress(), 0),
+				DEFAULT_BATCH_WINDOW_MICROS, DEFAULT_MAX_BATCH, DEFAULT_MAX_QUEUED);
+	}
+
+
+	/**
+	* Starts a server.
+	* @param paillierVal key of the server
+	* @param address address to listen on, port 0 for a free port
+	* @param batchWindowMicros how long a batch waits for more requests after its first one
+	* @param maxBatch maximum requests per batch
+	* @param maxQueued maximum waiting requests per operation before OVERLOADED
+	* @throws IOException if the socket cannot be opened
+	*/
+
+	public PaillierServer(Paillier paillierVal, InetSocketAddress address, long batchWindowMicros, int maxBatch,
+			int maxQueued) throws IOException {
+
+		if (batchWindowMicros < 0 || maxBatch < 1 || maxQueued < 1)
+			throw new IllegalArgumentException("batch window must be non-negative, batch and queue sizes positive");
+
+		paillier = paillierVal;
+
+		//small chunks: a batch holds at most a few hundred values
+		PaillierBatch batch = new PaillierBatch(paillier, 8, ForkJoinPool.commonPool());
+		encryption = new Batcher("encrypt", batch::Encryption, batchWindowMicros, maxBatch, maxQueued);
+		decryption = new Batcher("decrypt", batch::Decryption, batchWindowMicros, maxBatch, maxQueued);
+
+		connectionThreads = connectionThreadFactory();
+
+		serverSocket = new ServerSocket();
+		serverSocket.bind(address, 1024);
+
+		Thread acceptor = new Thread(this::accept, "paillier-server-accept");
+		acceptor.setDaemon(true);
+		acceptor.start();
+	}
+
+
+	/**
+	* @return the port the server listens on
+	*/
+
+	public int getPort() {
+		return serverSocket.getLocalPort();
+	}
+
+
+	/**
+	* @return true if connections run on virtual threads
+	*/
+
+	public boolean usesVirtualThreads() {
+		return connectionThreads != PLATFORM_THREADS;
+	}
+
+
+	/**
+	* Stops accepting, closes all connections and stops the batchers.
+	*/
+
+	@Override
+	public void close() throws IOException {
+
+		running = false;
+		serverSocket.close();
+		for (Socket socket : connections)
+			socket.close();
+		encryption.stop();
+		decryption.stop();
+	}
+
+
+	/**
+	* Accept loop. A failed accept, e.g. out of file descriptors, is retried
+	* after a pause that doubles from 10 ms up to 1 s while accept keeps
+	* failing, so that a persistent failure does not spin a core.
+	*/
+
+	private void accept() {
+
+		long backoffMillis = 0;
+
+		while (running) {
+			try {
+				Socket socket = serverSocket.accept();
+				backoffMillis = 0;
+				socket.setTcpNoDelay(true);
+				connections.add(socket);
+				connectionThreads.newThread(() -> serve(socket)).start();
+			} catch (IOException e) {
+				if (!running || serverSocket.isClosed())
+					return;
+
+				backoffMillis = Math.min(MAX_ACCEPT_BACKOFF_MILLIS, Math.max(10, 2 * backoffMillis));
+				try {
+					Thread.sleep(backoffMillis);
+				} catch (InterruptedException interrupted) {
+					return;
+				}
+			}
+		}
+	}
+
+
+	/**
+	* Request loop of one connection.
+	*/
+
+	private void serve(Socket socket) {
+
+		try (Socket connection = socket;
+				DataInputStream in = new DataInputStream(new BufferedInputStream(connection.getInputStream()));
+				DataOutputStream out = new DataOutputStream(new BufferedOutputStream(connection.getOutputStream()))) {
+
+			while (running) {
+
+				int op;
+				try {
+					op = in.readByte();
+				} catch (EOFException e) {
+					return;
+				}
+				int id = in.readInt();
+				int count = in.readUnsignedByte();
+
+				BigInteger[] operands = new BigInteger[count];
+				for (int i = 0; i < count; i++)
+					operands[i] = readNumber(in);
+
+				out.writeInt(id);
+				try {
+					BigInteger result = execute(op, operands);
+					out.writeByte(OK);
+					writeNumber(out, result);
+				} catch (RejectedExecutionException e) {
+					out.writeByte(OVERLOADED);
+					out.writeUTF("server overloaded");
+				} catch (RuntimeException e) {
+					out.writeByte(ERROR);
+					out.writeUTF(String.valueOf(e.getMessage()));
+				}
+				out.flush();
+			}
+		} catch (IOException e) {
+			//connection closed by the client or by close()
+		} finally {
+			connections.remove(socket);
+		}
+	}
+
+
+	private BigInteger execute(int op, BigInteger[] operands) {
+
+		int expected = op == ADD ? 2 : 1;
+		if (operands.length != expected)
+			throw new IllegalArgumentException("operation " + op + " takes " + expected + " operands");
+
+		switch (op) {
+			case ENCRYPT:
+				return encryption.submit(operands[0]);
+			case DECRYPT:
+				return decryption.submit(operands[0]);
+			case ADD:
+				return paillier.HomomorphicAddition(operands[0], operands[1]);
+			default:
+				throw new IllegalArgumentException("unknown operation " + op);
+		}
+	}
+
+
+	/**
+	* Collects the requests of one operation into micro-batches.
+	*/
+
+	private static final class Batcher {
+
+		private final ArrayBlockingQueue<Pending> queue;
+
+		private final UnaryOperator<BigInteger[]> operation;
+
+		private final long windowNanos;
+
+		private final int maxBatch;
+
+		private final Thread thread;
+
+		private volatile boolean running = true;
+
+
+		Batcher(String name, UnaryOperator<BigInteger[]> operationVal, long windowMicros, int maxBatchVal,
+				int maxQueued) {
+
+			queue = new ArrayBlockingQueue<Pending>(maxQueued);
+			operation = operationVal;
+			windowNanos = windowMicros * 1000;
+			maxBatch = maxBatchVal;
+
+			thread = new Thread(this::run, "paillier-server-" + name);
+			thread.setDaemon(true);
+			thread.start();
+		}
+
+
+		/**
+		* Queues the value and waits for its result.
+		* @throws RejectedExecutionException if the queue is full
+		*/
+
+		BigInteger submit(BigInteger value) {
+
+			Pending pending = new Pending(value);
+			if (!running || !queue.offer(pending))
+				throw new RejectedExecutionException("queue full");
+
+			try {
+				return pending.result.get();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IllegalStateException("interrupted");
+			} catch (ExecutionException e) {
+				Throwable cause = e.getCause();
+				throw cause instanceof RuntimeException ? (RuntimeException) cause
+						: new IllegalStateException(cause);
+			}
+		}
+
+
+		private void run() {
+
+			List<Pending> batch = new ArrayList<Pending>(maxBatch);
+
+			while (running) {
+				try {
+					Pending first = queue.poll(100, TimeUnit.MILLISECONDS);
+					if (first == null)
+						continue;
+					batch.add(first);
+
+					//wait for more requests until the window of the first one closes
+					long deadline = first.arrival + windowNanos;
+					while (batch.size() < maxBatch) {
+						queue.drainTo(batch, maxBatch - batch.size());
+						long wait = deadline - System.nanoTime();
+						if (batch.size() == maxBatch || wait <= 0)
+							break;
+						Pending next = queue.poll(wait, TimeUnit.NANOSECONDS);
+						if (next == null)
+							break;
+						batch.add(next);
+					}
+
+					dispatch(batch);
+					batch.clear();
+
+				} catch (InterruptedException e) {
+					break;
+				}
+			}
+
+			//fail whatever is still waiting
+			for (Pending pending : batch)
+				pending.result.completeExceptionally(new RejectedExecutionException("server stopped"));
+			for (Pending pending; (pending = queue.poll()) != null;)
+				pending.result.completeExceptionally(new RejectedExecutionException("server stopped"));
+		}
+
+
+		private void dispatch(List<Pending> batch) {
+
+			BigInteger[] values = new BigInteger[batch.size()];
+			for (int i = 0; i < values.length; i++)
+				values[i] = batch.get(i).value;
+
+			try {
+				BigInteger[] results = operation.apply(values);
+				for (int i = 0; i < results.length; i++)
+					batch.get(i).result.complete(results[i]);
+			} catch (RuntimeException e) {
+				for (Pending pending : batch)
+					pending.result.completeExceptionally(e);
+			}
+		}
+
+
+		void stop() {
+
+			running = false;
+			thread.interrupt();
+		}
+	}
+
+
+	/**
+	* A queued request and its result.
+	*/
+
+	private static final class Pending {
+
+		final BigInteger value;
+
+		final long arrival = System.nanoTime();
+
+		final CompletableFuture<BigInteger> result = new CompletableFuture<BigInteger>();
+
+		Pending(BigInteger valueVal) {
+			value = valueVal;
+		}
+	}
+
+
+	/**
+	* Blocking client of the protocol; one request at a time per client.
+	*/
+
+	public static class Client implements Closeable {
+
+		private final Socket socket;
+
+		private final DataInputStream in;
+
+		private final DataOutputStream out;
+
+		private int nextId;
+
+
+		/**
+		* @param host server host
+		* @param port server port
+		* @throws IOException if the connection fails
+		*/
+
+		public Client(String host, int port) throws IOException {
+
+			socket = new Socket(host, port);
+			socket.setTcpNoDelay(true);
+			in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+			out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+		}
+
+
+		/**
+		* @param m plaintext
+		* @return its ciphertext
+		* @throws IOException on connection or server errors
+		* @throws RejectedExecutionException if the server is overloaded
+		*/
+
+		public BigInteger Encryption(BigInteger m) throws IOException {
+			return call(ENCRYPT, m);
+		}
+
+
+		/**
+		* @param c ciphertext
+		* @return its plaintext
+		* @throws IOException on connection or server errors
+		* @throws RejectedExecutionException if the server is overloaded
+		*/
+
+		public BigInteger Decryption(BigInteger c) throws IOException {
+			return call(DECRYPT, c);
+		}
+
+
+		/**
+		* @param c1 first ciphertext
+		* @param c2 second ciphertext
+		* @return ciphertext of the sum
+		* @throws IOException on connection or server errors
+		*/
+
+		public BigInteger HomomorphicAddition(BigInteger c1, BigInteger c2) throws IOException {
+			return call(ADD, c1, c2);
+		}
+
+
+		private BigInteger call(byte op, BigInteger... operands) throws IOException {
+
+			int id = nextId++;
+
+			out.writeByte(op);
+			out.writeInt(id);
+			out.writeByte(operands.length);
+			for (BigInteger operand : operands)
+				writeNumber(out, operand);
+			out.flush();
+
+			if (in.readInt() != id)
+				throw new IOException("response out of order");
+
+			byte status = in.readByte();
+			if (status == OK)
+				return readNumber(in);
+
+			String message = in.readUTF();
+			if (status == OVERLOADED)
+				throw new RejectedExecutionException(message);
+			throw new IOException(message);
+		}
+
+
+		@Override
+		public void close() throws IOException {
+			socket.close();
+		}
+	}
+
+
+	static void writeNumber(DataOutputStream out, BigInteger value) throws IOException {
+
+		byte[] bytes = value.toByteArray();
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+
+	static BigInteger readNumber(DataInputStream in) throws IOException {
+
+		int length = in.readInt();
+		if (length < 1 || length > MAX_NUMBER_BYTES)
+			throw new SocketException("malformed number of " + length + " bytes");
+
+		byte[] bytes = new byte[length];
+		in.readFully(bytes);
+		return new BigInteger(bytes);
+	}
+
+
+	private static final ThreadFactory PLATFORM_THREADS = runnable -> {
+		Thread thread = new Thread(runnable, "paillier-server-connection");
+		thread.setDaemon(true);
+		return thread;
+	};
+
+
+	/**
+	* Virtual threads through reflection, so that the class still compiles
+	* and runs on JVMs without them; platform threads there.
+	*/
+
+	static ThreadFactory connectionThreadFactory() {
+
+		try {
+			Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+			return (ThreadFactory) Class.forName("java.lang.Thread$Builder").getMethod("factory").invoke(builder);
+		} catch (ReflectiveOperationException | RuntimeException e) {
+			return PLATFORM_THREADS;
+		}
+	}
+}
@@ -0,0 +1,117 @@
+/*
+* Loopback load test of PaillierServer.
+*
+* Starts a server on a fresh key, opens the given number of concurrent
+* client connections, each on its own (virtual, where available) thread,
+* and lets every client send its requests back to back. Reports requests
+* per second, p50/p99/max latency of the answered requests and the number
+* of requests rejected as OVERLOADED.
+*
+* Usage:
+*
+*      java PaillierServerLoadTest [clients 10000] [requestsPerClient 10] [bits 1024] [encrypt|decrypt|add]
+*
+*/
+
+//used for mathematical operation
+import java.math.BigInteger;
+
+//perform input and output stuff
+import java.io.IOException;
+
+//client threads and result collection
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+
+public class PaillierServerLoadTest {
+
+	public static void main(String[] args) throws Exception {
+
+		int clients = args.length > 0 ? Integer.parseInt(args[0]) : 10000;
+		int requests = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+		int bits = args.length > 2 ? Integer.parseInt(args[2]) : 1024;
+		String operation = args.length > 3 ? args[3] : "encrypt";
+
+		Paillier key = new Paillier(bits, 64);
+		BigInteger sample = key.Encryption(BigInteger.valueOf(42));
+
+		try (PaillierServer server = new PaillierServer(key)) {
+
+			System.out.println("clients " + clients + ", requests per client " + requests + ", |n| = " + bits
+					+ ", operation " + operation + ", virtual threads " + server.usesVirtualThreads());
+
+			ThreadFactory threads = PaillierServer.connectionThreadFactory();
+
+			//latency of every answered request, -1 for rejected or failed ones
+			long[] latencies = new long[clients * requests];
+			Arrays.fill(latencies, -1);
+			AtomicInteger overloaded = new AtomicInteger(), failed = new AtomicInteger();
+
+			CountDownLatch connected = new CountDownLatch(clients), start = new CountDownLatch(1),
+					done = new CountDownLatch(clients);
+
+			for (int c = 0; c < clients; c++) {
+				final int client = c;
+				threads.newThread(() -> {
+					boolean ready = false;
+					try (PaillierServer.Client connection = new PaillierServer.Client("127.0.0.1", server.getPort())) {
+
+						ready = true;
+						connected.countDown();
+						start.await();
+
+						for (int r = 0; r < requests; r++) {
+							long begin = System.nanoTime();
+							try {
+								switch (operation) {
+									case "decrypt":
+										connection.Decryption(sample);
+										break;
+									case "add":
+										connection.HomomorphicAddition(sample, sample);
+										break;
+									default:
+										connection.Encryption(BigInteger.valueOf(client * requests + r));
+								}
+								latencies[client * requests + r] = System.nanoTime() - begin;
+							} catch (RejectedExecutionException e) {
+								overloaded.incrementAndGet();
+							}
+						}
+					} catch (IOException | InterruptedException e) {
+						if (failed.incrementAndGet() == 1)
+							System.err.println("client failed: " + e);
+						if (!ready)
+							connected.countDown();
+					} finally {
+						done.countDown();
+					}
+				}).start();
+			}
+
+			connected.await();
+			long begin = System.nanoTime();
+			start.countDown();
+			done.await();
+			double seconds = (System.nanoTime() - begin) / 1e9;
+
+			long[] answered = Arrays.stream(latencies).filter(latency -> latency >= 0).sorted().toArray();
+
+			System.out.printf("answered %d in %.2f s: %.0f requests/s%n", answered.length, seconds, answered.length / seconds);
+			if (answered.length > 0)
+				System.out.printf("latency p50 %.2f ms, p99 %.2f ms, max %.2f ms%n", percentile(answered, 0.50) / 1e6,
+						percentile(answered, 0.99) / 1e6, answered[answered.length - 1] / 1e6);
+			System.out.println("overloaded " + overloaded.get() + ", failed clients " + failed.get());
+		}
+	}
+
+
+	private static long percentile(long[] sorted, double fraction) {
+
+		return sorted[Math.min(sorted.length - 1, (int) Math.ceil(fraction * sorted.length) - 1)];
+	}
+}
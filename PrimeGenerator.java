@@ -0,0 +1,439 @@
+//References:
+//[1] Menezes, van Oorschot, Vanstone, "Handbook of Applied Cryptography," Note 4.51 (incremental search with sieving).
+
+
+/*
+* Prime generation for key generation.
+*
+* Candidates are searched incrementally from a random start,
+*
+*      start, start + step, start + 2*step, ...
+*
+* and a window of candidates is first sieved with the small primes below
+* SIEVE_LIMIT, so that Miller-Rabin (BigInteger.isProbablePrime) only runs on
+* candidates without a small factor. step is 2 for ordinary primes and
+* 2*alpha for primes p with alpha | p-1.
+*
+* sophieGermain() searches primes p' for safe primes 2p'+1 with one sieve:
+* a candidate is dropped when a small prime divides p' or 2p'+1, i.e. when
+* p' = 0 or p' = (sp-1)/2 mod sp, and both numbers are tested only if both
+* pass a base-2 Fermat test.
+*
+* next() searches in parallel on all cores: every searcher starts from its own
+* random point and the first prime found wins. A bounded pool of primes can
+* additionally be kept filled in the background, so that next() usually just
+* takes a ready prime. Pools live as long as the process, one per
+* (bit length, certainty), see forSize().
+*
+*/
+
+//used for mathematical operation
+import java.math.BigInteger;
+
+//used for Arrays implementation
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+//for generating random number
+import java.util.Random;
+
+//parallel search and the background pool
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+
+public class PrimeGenerator {
+
+	/**
+	* small primes used by the sieve are those below SIEVE_LIMIT.
+	*/
+
+	private static final int SIEVE_LIMIT = 1 << 14;
+
+	/**
+	* number of candidates sieved at once.
+	*/
+
+	private static final int SIEVE_WINDOW = 1 << 12;
+
+	private static final int[] SMALL_PRIMES = smallPrimes(SIEVE_LIMIT);
+
+	private static final BigInteger TWO = BigInteger.valueOf(2);
+
+	/**
+	* daemon threads of the parallel searches.
+	*/
+
+	private static final ExecutorService SEARCHERS = Executors.newCachedThreadPool(task -> {
+		Thread thread = new Thread(task, "paillier-prime-search");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	private static final ConcurrentHashMap<String, PrimeGenerator> GENERATORS =
+			new ConcurrentHashMap<String, PrimeGenerator>();
+
+
+	private final int bits, certainty;
+
+	private volatile ArrayBlockingQueue<BigInteger> pool;
+
+	private volatile Thread[] fillers;
+
+
+	/**
+	* @param bitsVal bit length of the primes, the two top bits are always set
+	* @param certaintyVal Miller-Rabin certainty as in BigInteger.isProbablePrime
+	*/
+
+	public PrimeGenerator(int bitsVal, int certaintyVal) {
+
+		if (bitsVal < 16)
+			throw new IllegalArgumentException("primes must have at least 16 bits");
+
+		bits = bitsVal;
+		certainty = certaintyVal;
+	}
+
+
+	/**
+	* The shared generator for a bit length and certainty. Its pool, once
+	* started, serves every key generation of the process.
+	* @param bits bit length of the primes
+	* @param certainty Miller-Rabin certainty
+	* @return the generator
+	*/
+
+	public static PrimeGenerator forSize(int bits, int certainty) {
+
+		return GENERATORS.computeIfAbsent(bits + ":" + certainty, key -> new PrimeGenerator(bits, certainty));
+	}
+
+
+	/**
+	* Returns a prime from the pool if there is one, otherwise searches
+	* one in parallel on all cores.
+	* @return a probable prime of the configured bit length
+	*/
+
+	public BigInteger next() {
+
+		return next(RandomnessProvider.secure());
+	}
+
+
+	/**
+	* Returns a prime from the pool if there is one, otherwise searches
+	* one in parallel on all cores with the given randomness. A deterministic
+	* provider bypasses the pool and searches on one thread only, so that the
+	* prime depends on the seed alone.
+	* @param random source of the random starting points
+	* @return a probable prime of the configured bit length
+	*/
+
+	public BigInteger next(RandomnessProvider random) {
+
+		if (random.deterministic())
+			return search(TWO, false, random.random());
+
+		ArrayBlockingQueue<BigInteger> queue = pool;
+		if (queue != null) {
+			BigInteger prime = queue.poll();
+			if (prime != null)
+				return prime;
+		}
+		return parallelSearch(TWO, Runtime.getRuntime().availableProcessors(), random);
+	}
+
+
+	/**
+	* Searches, in parallel, a prime p = start + k*step with the configured
+	* bit length. Every searcher picks its own random start with the two top
+	* bits set and start = 1 mod step.
+	* @param step even step between candidates, 2 for ordinary primes
+	* @param searchers number of parallel searches
+	* @return a probable prime p with p = 1 mod step
+	*/
+
+	public BigInteger parallelSearch(BigInteger step, int searchers) {
+
+		return parallelSearch(step, searchers, RandomnessProvider.secure());
+	}
+
+
+	/**
+	* Searches, in parallel, a prime p = start + k*step with the configured
+	* bit length, drawing the random starts from the given provider. A
+	* deterministic provider always searches on the calling thread.
+	* @param step even step between candidates, 2 for ordinary primes
+	* @param searchers number of parallel searches
+	* @param random source of the random starting points
+	* @return a probable prime p with p = 1 mod step
+	*/
+
+	public BigInteger parallelSearch(BigInteger step, int searchers, RandomnessProvider random) {
+
+		return parallelSearch(step, false, searchers, random);
+	}
+
+
+	/**
+	* Searches, in parallel on all cores, a prime p' of the configured bit
+	* length such that 2p'+1 is prime as well, i.e. a safe prime 2p'+1 of
+	* one bit more. Pooled primes are not used. A deterministic provider
+	* searches on the calling thread.
+	* @param random source of the random starting points
+	* @return a probable prime p' with 2p'+1 a probable prime
+	*/
+
+	public BigInteger sophieGermain(RandomnessProvider random) {
+
+		return parallelSearch(TWO, true, Runtime.getRuntime().availableProcessors(), random);
+	}
+
+
+	private BigInteger parallelSearch(BigInteger step, boolean safe, int searchers, RandomnessProvider random) {
+
+		if (searchers <= 1 || random.deterministic())
+			return search(step, safe, random.random());
+
+		//random() is called on the searcher thread, so that each gets its own generator
+		List<Callable<BigInteger>> tasks = new ArrayList<Callable<BigInteger>>();
+		for (int i = 0; i < searchers; i++)
+			tasks.add(() -> search(step, safe, random.random()));
+
+		try {
+			return SEARCHERS.invokeAny(tasks);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("prime search interrupted", e);
+		} catch (ExecutionException e) {
+			throw new IllegalStateException("prime search failed", e.getCause());
+		}
+	}
+
+
+	/**
+	* Sequential sieved search from a random start until a prime is found,
+	* if safe one whose 2p'+1 is prime too. Stops with an exception when the
+	* calling thread is interrupted.
+	*/
+
+	private BigInteger search(BigInteger step, boolean safe, Random random) {
+
+		while (true) {
+
+			//random start with the two top bits set and start = 1 mod step
+			BigInteger start = new BigInteger(bits, random).setBit(bits - 1).setBit(bits - 2);
+			start = start.subtract(start.mod(step)).add(BigInteger.ONE);
+
+			BigInteger prime = sieveSearch(start, step, safe);
+			if (prime != null)
+				return prime;
+		}
+	}
+
+
+	/**
+	* Sieves windows of candidates start + k*step until a prime is found or
+	* the candidates outgrow the bit length; if safe, candidates c with a
+	* small factor of 2c+1 are sieved out too and 2c+1 must be prime.
+	* @return a probable prime, or null to restart from a new random point
+	*/
+
+	private BigInteger sieveSearch(BigInteger start, BigInteger step, boolean safe) {
+
+		BitSet composite = new BitSet(SIEVE_WINDOW);
+		BigInteger windowStep = step.multiply(BigInteger.valueOf(SIEVE_WINDOW));
+
+		//residues of start, of step^(-1) and of the window step mod every small prime
+		int primes = SMALL_PRIMES.length;
+		long[] residue = new long[primes], stepInverse = new long[primes], windowResidue = new long[primes];
+		for (int i = 0; i < primes; i++) {
+			BigInteger sp = BigInteger.valueOf(SMALL_PRIMES[i]);
+			residue[i] = start.mod(sp).longValue();
+			long st = step.mod(sp).longValue();
+			stepInverse[i] = st == 0 ? 0 : modInverse(st, SMALL_PRIMES[i]);
+			windowResidue[i] = windowStep.mod(sp).longValue();
+		}
+
+		while (start.bitLength() == bits) {
+
+			if (Thread.currentThread().isInterrupted())
+				throw new IllegalStateException("prime search cancelled");
+
+			//mark every k with start + k*step = 0 mod sp
+			composite.clear();
+			for (int i = 0; i < primes; i++) {
+
+				int sp = SMALL_PRIMES[i];
+
+				//sp divides step: no candidate, or every candidate, is divisible by sp
+				if (stepInverse[i] == 0) {
+					if (residue[i] == 0)
+						composite.set(0, SIEVE_WINDOW);
+					continue;
+				}
+
+				long k0 = (sp - residue[i]) % sp * stepInverse[i] % sp;
+				for (long k = k0; k < SIEVE_WINDOW; k += sp)
+					composite.set((int) k);
+
+				//2c+1 = 0 mod sp for c = (sp-1)/2 mod sp
+				if (safe) {
+					long k1 = ((sp - 1) / 2 - residue[i] + sp) % sp * stepInverse[i] % sp;
+					for (long k = k1; k < SIEVE_WINDOW; k += sp)
+						composite.set((int) k);
+				}
+
+				residue[i] = (residue[i] + windowResidue[i]) % sp;
+			}
+
+			for (int k = composite.nextClearBit(0); k < SIEVE_WINDOW; k = composite.nextClearBit(k + 1)) {
+
+				BigInteger candidate = start.add(step.multiply(BigInteger.valueOf(k)));
+				if (candidate.bitLength() != bits)
+					return null;
+
+				if (!safe) {
+					if (candidate.isProbablePrime(certainty))
+						return candidate;
+					continue;
+				}
+
+				//Fermat tests of both first, Miller-Rabin only on pairs that pass
+				BigInteger doubled = candidate.shiftLeft(1).setBit(0);
+				if (fermat(candidate) && fermat(doubled)
+						&& candidate.isProbablePrime(certainty) && doubled.isProbablePrime(certainty))
+					return candidate;
+			}
+
+			start = start.add(windowStep);
+		}
+		return null;
+	}
+
+
+	/**
+	* Starts background threads that keep up to capacity primes ready.
+	* @param capacity maximum number of pooled primes
+	* @param threads number of filler threads
+	*/
+
+	public synchronized void startPool(int capacity, int threads) {
+
+		stopPool();
+
+		final ArrayBlockingQueue<BigInteger> queue = new ArrayBlockingQueue<BigInteger>(capacity);
+		pool = queue;
+		fillers = new Thread[threads];
+
+		for (int i = 0; i < threads; i++) {
+			fillers[i] = new Thread(() -> {
+				Random random = RandomnessProvider.secure().random();
+				try {
+					while (!Thread.currentThread().isInterrupted())
+						queue.put(search(TWO, false, random));
+				} catch (InterruptedException | IllegalStateException e) {
+					//pool stopped
+				}
+			}, "paillier-prime-pool-" + bits);
+			fillers[i].setDaemon(true);
+			fillers[i].start();
+		}
+	}
+
+
+	/**
+	* Stops the background threads and drops the pooled primes.
+	*/
+
+	public synchronized void stopPool() {
+
+		if (fillers != null)
+			for (Thread filler : fillers)
+				filler.interrupt();
+
+		fillers = null;
+		pool = null;
+	}
+
+
+	/**
+	* @return number of primes ready in the pool
+	*/
+
+	public int pooled() {
+
+		ArrayBlockingQueue<BigInteger> queue = pool;
+		return queue == null ? 0 : queue.size();
+	}
+
+
+	/**
+	* @return bit length of the primes
+	*/
+
+	public int getBits() {
+		return bits;
+	}
+
+
+	/**
+	* base-2 Fermat test of an odd number x > 2.
+	*/
+
+	private static boolean fermat(BigInteger x) {
+
+		return TWO.modPow(x.subtract(BigInteger.ONE), x).equals(BigInteger.ONE);
+	}
+
+
+	/**
+	* a^(-1) mod m for 0 < a < m, m prime.
+	*/
+
+	private static long modInverse(long a, long m) {
+
+		long t = 0, newT = 1, r = m, newR = a;
+		while (newR != 0) {
+			long quotient = r / newR;
+			long tmp = t - quotient * newT;
+			t = newT;
+			newT = tmp;
+			tmp = r - quotient * newR;
+			r = newR;
+			newR = tmp;
+		}
+		return t < 0 ? t + m : t;
+	}
+
+
+	/**
+	* odd primes below limit (sieve of Eratosthenes).
+	*/
+
+	private static int[] smallPrimes(int limit) {
+
+		BitSet composite = new BitSet(limit);
+		List<Integer> primes = new ArrayList<Integer>();
+
+		for (int i = 3; i < limit; i += 2) {
+			if (composite.get(i))
+				continue;
+			primes.add(i);
+			for (long j = (long) i * i; j < limit; j += 2L * i)
+				composite.set((int) j);
+		}
+
+		int[] result = new int[primes.size()];
+		for (int i = 0; i < result.length; i++)
+			result[i] = primes.get(i);
+		return result;
+	}
+}
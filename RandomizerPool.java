@@ -0,0 +1,221 @@
+/*
+* Pool of precomputed randomizers r^n mod n^2 for the standard scheme.
+*
+* In Encryption c = g^m * r^n mod n^2 the term r^n mod n^2 does not depend
+* on the message, and it is the most expensive part of the encryption.
+* Background worker threads precompute it and keep it in a bounded queue:
+*
+*  - when the queue falls below the low watermark the workers start filling,
+*  - when it reaches the high watermark they stop again,
+*  - when the queue is empty the caller computes r^n mod n^2 inline (a miss).
+*
+*/
+
+//used for mathematical operation
+import java.math.BigInteger;
+
+//bounded queue shared by workers and callers
+import java.util.concurrent.ArrayBlockingQueue;
+
+//hit and miss counters
+import java.util.concurrent.atomic.AtomicLong;
+
+
+public class RandomizerPool {
+
+	/**
+	* public key values the randomizers belong to.
+	*/
+
+	private final BigInteger n, nsquare;
+
+	private final int bitLength;
+
+	private final RandomnessProvider random;
+
+
+	/**
+	* precomputed r^n mod n^2 values.
+	*/
+
+	private final ArrayBlockingQueue<BigInteger> queue;
+
+	private final int lowWatermark, highWatermark;
+
+
+	/**
+	* true while the workers should fill the queue up to the high watermark.
+	*/
+
+	private boolean filling = true;
+
+	private volatile boolean running = true;
+
+	private final Thread[] workers;
+
+	private final AtomicLong hits = new AtomicLong(), misses = new AtomicLong();
+
+
+	/**
+	* Creates the pool and starts its worker threads.
+	* @param nVal n of the public key
+	* @param bitLengthVal number of bits of the random r
+	* @param capacity maximum number of precomputed randomizers
+	* @param lowWatermarkVal the workers start filling below this size
+	* @param highWatermarkVal the workers stop filling at this size
+	* @param threads number of worker threads
+	*/
+
+	public RandomizerPool(BigInteger nVal, int bitLengthVal, int capacity, int lowWatermarkVal,
+						int highWatermarkVal, int threads) {
+
+		this(nVal, bitLengthVal, capacity, lowWatermarkVal, highWatermarkVal, threads, RandomnessProvider.secure());
+	}
+
+
+	/**
+	* Creates the pool and starts its worker threads.
+	* @param nVal n of the public key
+	* @param bitLengthVal number of bits of the random r
+	* @param capacity maximum number of precomputed randomizers
+	* @param lowWatermarkVal the workers start filling below this size
+	* @param highWatermarkVal the workers stop filling at this size
+	* @param threads number of worker threads
+	* @param randomVal source of the random r
+	*/
+
+	public RandomizerPool(BigInteger nVal, int bitLengthVal, int capacity, int lowWatermarkVal,
+						int highWatermarkVal, int threads, RandomnessProvider randomVal) {
+
+		if (lowWatermarkVal < 0 || lowWatermarkVal > highWatermarkVal || highWatermarkVal > capacity)
+			throw new IllegalArgumentException("watermarks must satisfy 0 <= low <= high <= capacity");
+
+		n = nVal;
+		nsquare = n.multiply(n);
+		bitLength = bitLengthVal;
+		random = randomVal;
+		queue = new ArrayBlockingQueue<BigInteger>(capacity);
+		lowWatermark = lowWatermarkVal;
+		highWatermark = highWatermarkVal;
+
+		workers = new Thread[threads];
+		for (int i = 0; i < threads; i++) {
+			workers[i] = new Thread(this::fill, "paillier-randomizer-" + i);
+			workers[i].setDaemon(true);
+			workers[i].start();
+		}
+	}
+
+
+	/**
+	* Worker loop: waits until filling is requested, then adds
+	* randomizers until the high watermark is reached.
+	*/
+
+	private void fill() {
+
+		while (running) {
+
+			synchronized (this) {
+				while (running && !filling) {
+					try {
+						wait();
+					} catch (InterruptedException e) {
+						return;
+					}
+				}
+			}
+			if (!running)
+				return;
+
+			BigInteger rn = nextRandomizer();
+
+			synchronized (this) {
+				queue.offer(rn);
+				if (queue.size() >= highWatermark)
+					filling = false;
+			}
+		}
+	}
+
+
+	/**
+	* Computes one randomizer r^n mod n^2 for a random r.
+	*/
+
+	private BigInteger nextRandomizer() {
+
+		BigInteger r = random.nextBigInteger(bitLength);
+		return r.modPow(n, nsquare);
+	}
+
+
+	/**
+	* Returns a precomputed randomizer r^n mod n^2, or computes one inline
+	* if the pool is empty. Every randomizer is handed out only once.
+	* @return r^n mod n^2 for a fresh random r
+	*/
+
+	public BigInteger take() {
+
+		BigInteger rn = queue.poll();
+
+		if (queue.size() < lowWatermark) {
+			synchronized (this) {
+				if (!filling) {
+					filling = true;
+					notifyAll();
+				}
+			}
+		}
+
+		if (rn != null) {
+			hits.incrementAndGet();
+			return rn;
+		}
+
+		misses.incrementAndGet();
+		return nextRandomizer();
+	}
+
+
+	/**
+	* Stops the worker threads. take() keeps working with inline computation.
+	*/
+
+	public void shutdown() {
+
+		running = false;
+		synchronized (this) {
+			notifyAll();
+		}
+		queue.clear();
+	}
+
+
+	/**
+	* @return number of take() calls served from the pool
+	*/
+
+	public long getHits() {
+		return hits.get();
+	}
+
+
+	/**
+	* @return number of take() calls that computed the randomizer inline
+	*/
+
+	public long getMisses() {
+		return misses.get();
+	}
+
+
+	/**
+	* @return number of randomizers currently in the pool
+	*/
+
+	public int size() {
+		return queue.size();
+	}
+}
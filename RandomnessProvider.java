@@ -0,0 +1,63 @@
+/*
+* Source of the random values drawn by key generation and encryption.
+*
+* The default, secure(), is a SecureRandom DRBG per thread that hands out
+* randomizers from a bulk-filled buffer, see BufferedSecureRandomProvider.
+* seeded(seed) gives a deterministic source for reproducible tests and
+* benchmarks; it must never be used for real keys or ciphertexts.
+*
+*/
+
+//used for mathematical operation
+import java.math.BigInteger;
+
+//for generating random number
+import java.util.Random;
+
+
+public interface RandomnessProvider {
+
+	/**
+	* @param bits number of random bits
+	* @return a uniformly random BigInteger in [0, 2^bits)
+	*/
+
+	BigInteger nextBigInteger(int bits);
+
+
+	/**
+	* @return a Random for APIs that need one, such as prime generation;
+	* for the default provider this is the SecureRandom of the calling thread
+	*/
+
+	Random random();
+
+
+	/**
+	* @return true if the values are reproducible from a seed; prime
+	* generation then searches sequentially and skips its background pool
+	*/
+
+	default boolean deterministic() {
+		return false;
+	}
+
+
+	/**
+	* @return the shared per-thread buffered SecureRandom provider
+	*/
+
+	static RandomnessProvider secure() {
+		return BufferedSecureRandomProvider.INSTANCE;
+	}
+
+
+	/**
+	* @param seed seed of the deterministic source
+	* @return a deterministic provider, for tests and benchmarks only
+	*/
+
+	static RandomnessProvider seeded(long seed) {
+		return new SeededRandomnessProvider(seed);
+	}
+}
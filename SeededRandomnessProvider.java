@@ -0,0 +1,51 @@
+/*
+* Deterministic RandomnessProvider for reproducible tests and benchmarks.
+*
+* All threads share one java.util.Random with a fixed seed, so a
+* single-threaded run always produces the same keys and ciphertexts.
+* Not a cryptographic generator: never use it for real data.
+*
+*/
+
+//used for mathematical operation
+import java.math.BigInteger;
+
+//for generating random number
+import java.util.Random;
+
+
+public final class SeededRandomnessProvider implements RandomnessProvider {
+
+	private final Random random;
+
+
+	/**
+	* @param seed seed of the generator
+	*/
+
+	public SeededRandomnessProvider(long seed) {
+
+		random = new Random(seed);
+	}
+
+
+	@Override
+	public BigInteger nextBigInteger(int bits) {
+
+		return new BigInteger(bits, random);
+	}
+
+
+	@Override
+	public Random random() {
+
+		return random;
+	}
+
+
+	@Override
+	public boolean deterministic() {
+
+		return true;
+	}
+}
@@ -0,0 +1,278 @@
+/*
+* Plaintext slot packing: k small values in one Paillier plaintext.
+*
+* Each slot is valueBits + headroomBits wide and value i sits at bit
+* offset i * (valueBits + headroomBits):
+*
+*      m = v_0 + v_1*2^w + v_2*2^(2w) + ... + v_(k-1)*2^((k-1)w),   w = valueBits + headroomBits
+*
+* with k = floor((|n| - 1) / w), so that m < n. One encryption then carries k
+* values, and since E(a)*E(b) = E(a + b) the product of two packed
+* ciphertexts adds them slot by slot. The headroom bits take the carries of
+* those additions: up to 2^headroomBits packed plaintexts of valueBits-bit
+* values can be summed before a slot overflows into its neighbour.
+*
+* Unlike PackedDecryption, which packs existing ciphertexts just for
+* decryption, the values here are packed before encryption, so ciphertext
+* count, storage and encryption time all shrink by k.
+*
+*/
+
+//used for mathematical operation
+import java.math.BigInteger;
+
+
+public class SlotPacker {
+
+	private final Paillier paillier;
+
+	/**
+	* bits per input value, carry bits above each value, values per plaintext.
+	*/
+
+	private final int valueBits, headroomBits, slots;
+
+	private final int slotWidth;
+
+	private final BigInteger slotMask;
+
+
+	/**
+	* @param paillierVal key to encrypt and decrypt with
+	* @param valueBitsVal bits per value, every value must be below 2^valueBitsVal
+	* @param headroomBitsVal carry bits per slot; 2^headroomBitsVal packed
+	* ciphertexts can be added without overflow
+	*/
+
+	public SlotPacker(Paillier paillierVal, int valueBitsVal, int headroomBitsVal) {
+
+		if (valueBitsVal < 1 || headroomBitsVal < 0 || headroomBitsVal > 62)
+			throw new IllegalArgumentException("value bits must be positive and headroom bits in [0, 62]");
+
+		paillier = paillierVal;
+		valueBits = valueBitsVal;
+		headroomBits = headroomBitsVal;
+		slotWidth = valueBits + headroomBits;
+
+		//k*w must stay below |n| so that the packed plaintext never wraps mod n
+		slots = (paillier.n.bitLength() - 1) / slotWidth;
+
+		if (slots < 1)
+			throw new IllegalArgumentException("slot width exceeds the plaintext space");
+
+		slotMask = BigInteger.ONE.shiftLeft(slotWidth).subtract(BigInteger.ONE);
+	}
+
+
+	/**
+	* Packs up to getSlots() values into one plaintext.
+	* @param values values in [0, 2^valueBits)
+	* @param from index of the first value
+	* @param count number of values, at most getSlots()
+	* @return packed plaintext
+	*/
+
+	public BigInteger pack(BigInteger[] values, int from, int count) {
+
+		if (count > slots)
+			throw new IllegalArgumentException(count + " values do not fit into " + slots + " slots");
+
+		BigInteger packed = BigInteger.ZERO;
+
+		//Horner from the highest slot down
+		for (int i = from + count - 1; i >= from; i--) {
+
+			BigInteger value = values[i];
+			if (value.signum() < 0 || value.bitLength() > valueBits)
+				throw new IllegalArgumentException("value " + i + " is not in [0, 2^" + valueBits + ")");
+
+			packed = packed.shiftLeft(slotWidth).or(value);
+		}
+		return packed;
+	}
+
+
+	/**
+	* @param values at most getSlots() values in [0, 2^valueBits)
+	* @return packed plaintext
+	*/
+
+	public BigInteger pack(BigInteger[] values) {
+
+		return pack(values, 0, values.length);
+	}
+
+
+	/**
+	* @param values at most getSlots() values in [0, 2^valueBits)
+	* @return packed plaintext
+	*/
+
+	public BigInteger pack(long[] values) {
+
+		BigInteger[] big = new BigInteger[values.length];
+		for (int i = 0; i < values.length; i++)
+			big[i] = BigInteger.valueOf(values[i]);
+		return pack(big);
+	}
+
+
+	/**
+	* Splits a (decrypted) packed plaintext into its slots. Each slot holds
+	* a sum of at most 2^headroomBits values; a carry out of the top slot is
+	* detected, carries between inner slots cannot be.
+	* @param plain packed plaintext
+	* @param count number of slots in use
+	* @return slot values, each below 2^(valueBits + headroomBits)
+	*/
+
+	public BigInteger[] unpack(BigInteger plain, int count) {
+
+		if (count > slots)
+			throw new IllegalArgumentException(count + " values do not fit into " + slots + " slots");
+
+		if (plain.signum() < 0 || plain.bitLength() > count * slotWidth)
+			throw new ArithmeticException("packed plaintext overflows its " + count + " slots");
+
+		BigInteger[] values = new BigInteger[count];
+		for (int i = 0; i < count; i++)
+			values[i] = plain.shiftRight(i * slotWidth).and(slotMask);
+		return values;
+	}
+
+
+	/**
+	* Encrypts the values with the standard scheme, getSlots() per ciphertext.
+	* @param values values in [0, 2^valueBits)
+	* @return ceil(values.length / getSlots()) ciphertexts
+	*/
+
+	public BigInteger[] Encryption(BigInteger[] values) {
+
+		return encrypt(values, false);
+	}
+
+
+	/**
+	* Encrypts the values with the modified scheme, getSlots() per ciphertext.
+	* @param values values in [0, 2^valueBits)
+	* @return ceil(values.length / getSlots()) ciphertexts
+	*/
+
+	public BigInteger[] mEncryption(BigInteger[] values) {
+
+		return encrypt(values, true);
+	}
+
+
+	/**
+	* Decrypts packed ciphertexts of the standard scheme.
+	* @param c packed ciphertexts
+	* @param count total number of values packed into c
+	* @return the count values (or slot-wise sums) in packing order
+	*/
+
+	public BigInteger[] Decryption(BigInteger[] c, int count) {
+
+		return decrypt(c, count, false);
+	}
+
+
+	/**
+	* Decrypts packed ciphertexts of the modified scheme.
+	* @param c packed ciphertexts
+	* @param count total number of values packed into c
+	* @return the count values (or slot-wise sums) in packing order
+	*/
+
+	public BigInteger[] mDecryption(BigInteger[] c, int count) {
+
+		return decrypt(c, count, true);
+	}
+
+
+	/**
+	* Packed homomorphic addition: every slot of the result decrypts to the
+	* sum of the corresponding slots of c1 and c2.
+	* @param c1 first packed ciphertext
+	* @param c2 second packed ciphertext
+	* @return packed ciphertext of the slot-wise sums
+	*/
+
+	public BigInteger HomomorphicAddition(BigInteger c1, BigInteger c2) {
+
+		return paillier.HomomorphicAddition(c1, c2);
+	}
+
+
+	/**
+	* Packed homomorphic addition of two equally packed ciphertext vectors.
+	* @param c1 first packed ciphertexts
+	* @param c2 second packed ciphertexts, same length as c1
+	* @return packed ciphertexts of the slot-wise sums
+	*/
+
+	public BigInteger[] HomomorphicAddition(BigInteger[] c1, BigInteger[] c2) {
+
+		if (c1.length != c2.length)
+			throw new IllegalArgumentException("ciphertext vectors differ in length");
+
+		BigInteger[] sum = new BigInteger[c1.length];
+		for (int i = 0; i < c1.length; i++)
+			sum[i] = paillier.HomomorphicAddition(c1[i], c2[i]);
+		return sum;
+	}
+
+
+	private BigInteger[] encrypt(BigInteger[] values, boolean modified) {
+
+		BigInteger[] c = new BigInteger[(values.length + slots - 1) / slots];
+
+		for (int i = 0; i < c.length; i++) {
+
+			int from = i * slots;
+			BigInteger packed = pack(values, from, Math.min(slots, values.length - from));
+
+			c[i] = modified ? paillier.mEncryption(packed) : paillier.Encryption(packed);
+		}
+		return c;
+	}
+
+
+	private BigInteger[] decrypt(BigInteger[] c, int count, boolean modified) {
+
+		if (count < 0 || count > (long) c.length * slots)
+			throw new IllegalArgumentException(count + " values cannot be packed into " + c.length + " ciphertexts");
+
+		BigInteger[] values = new BigInteger[count];
+
+		for (int i = 0; i * slots < count; i++) {
+
+			BigInteger plain = modified ? paillier.mCRTDecryption(c[i]) : paillier.CRTDecryption(c[i]);
+
+			int from = i * slots;
+			BigInteger[] slot = unpack(plain, Math.min(slots, count - from));
+			System.arraycopy(slot, 0, values, from, slot.length);
+		}
+		return values;
+	}
+
+
+	/**
+	* @return number of values per ciphertext
+	*/
+
+	public int getSlots() {
+		return slots;
+	}
+
+
+	/**
+	* @return number of packed ciphertexts of valueBits-bit values that can
+	* be summed before a slot overflows, 2^headroomBits
+	*/
+
+	public long getMaxAdditions() {
+		return 1L << headroomBits;
+	}
+}
@@ -0,0 +1,579 @@
+//References:
+//[1] Victor Shoup, "Practical Threshold Signatures," EUROCRYPT 2000.
+//[2] Ivan Damgard, Mads Jurik, "A Generalisation, a Simplification and Some Applications of Paillier's Probabilistic Public-Key System," PKC 2001, section 4.
+
+
+/****************************************Threshold Paillier Encryption System***********************************************************/
+/*
+* Paillier's scheme with g = n+1 whose decryption key is split among w
+* nodes, so that any t of them decrypt together and fewer learn nothing.
+*
+* Key generation (dealer)
+*
+* 1). Choose two safe primes p = 2p'+1 and q = 2q'+1 and compute n = p.q, m = p'.q'.
+*
+* 2). Compute d with d = 0 mod m and d = 1 mod n.
+*
+* 3). Choose a random polynomial f(X) = d + a_1 X + ... + a_(t-1) X^(t-1) over Z_(n*m)
+*     and give node i = 1..w its share s_i = f(i) mod n*m.
+*
+* 4). The public key is (n, t, w), delta = w!.
+*
+*
+* Encryption is the standard one: c = (1+n)^m * r^n mod n^2.
+*
+*
+* Decryption
+*
+* 1). Every node i of a set S of t nodes computes its partial decryption
+*     c_i = c^(2*delta*s_i) mod n^2.
+*
+* 2). The combiner computes the integer Lagrange coefficients
+*     lambda_i = delta * prod_(j in S, j != i) j / (j - i)
+*     and c' = prod_(i in S) c_i^(2*lambda_i) mod n^2 = c^(4*delta^2*d) = (1+n)^(4*delta^2*m).
+*
+* 3). m = L(c') * (4*delta^2)^(-1) mod n, where L(u) = (u-1)/n.
+*
+*
+* A node only needs its share and n; partial decryptions of different
+* nodes run in parallel, and Decryption(c[], shares, executor) runs every
+* node over a whole batch before the batch is combined, so that the
+* Lagrange coefficients are computed once per set of nodes.
+*
+* Shares and the public key can be written to and read from streams, so that
+* nodes can run in separate processes. Partial decryptions are not verified:
+* the proofs of correct decryption of [1] are not implemented, so a faulty
+* node gives a wrong plaintext rather than an error.
+*
+*/
+
+//used for mathematical operation
+import java.math.BigInteger;
+
+//perform input and output stuff
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+//used for Arrays implementation
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+//parallel partial decryption and the coefficient cache
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.stream.IntStream;
+
+
+public class ThresholdPaillier {
+
+	/**
+	* n = p*q, nsquare = n*n; g = n+1.
+	*/
+
+	public final BigInteger n, nsquare;
+
+	/**
+	* t nodes out of w decrypt.
+	*/
+
+	private final int t, w;
+
+	/**
+	* delta = w!.
+	*/
+
+	private final BigInteger delta;
+
+	/**
+	* (4*delta^2)^(-1) mod n.
+	*/
+
+	private final BigInteger combineFactor;
+
+	/**
+	* shares made by the dealer, null for a key read from a stream.
+	*/
+
+	private KeyShare[] shares;
+
+	/**
+	* 2*lambda_i for every node of a set, by set.
+	*/
+
+	private final ConcurrentHashMap<String, BigInteger[]> coefficients = new ConcurrentHashMap<String, BigInteger[]>();
+
+	/**
+	* source of the random r of Encryption; the dealer's, or the default
+	* randomness for a key read from a stream.
+	*/
+
+	private final RandomnessProvider random;
+
+
+	/**
+	* Deals a new key with the default randomness.
+	* @param bits bit length of n
+	* @param tVal number of nodes needed to decrypt
+	* @param wVal number of nodes
+	* @param certainty Miller-Rabin certainty of the primes
+	*/
+
+	public ThresholdPaillier(int bits, int tVal, int wVal, int certainty) {
+
+		this(bits, tVal, wVal, certainty, RandomnessProvider.secure());
+	}
+
+
+	/**
+	* Deals a new key: generates safe primes and splits the decryption key
+	* into w shares, see getShares().
+	* @param bits bit length of n
+	* @param tVal number of nodes needed to decrypt
+	* @param wVal number of nodes
+	* @param certainty Miller-Rabin certainty of the primes
+	* @param randomVal source of the primes, of the polynomial and of the encryptions
+	*/
+
+	public ThresholdPaillier(int bits, int tVal, int wVal, int certainty, RandomnessProvider randomVal) {
+
+		if (tVal < 1 || tVal > wVal)
+			throw new IllegalArgumentException("need 1 <= t <= w, got t = " + tVal + ", w = " + wVal);
+
+		random = randomVal;
+
+		BigInteger p, q;
+		do {
+			p = safePrime(bits / 2, certainty, random);
+			q = safePrime(bits - bits / 2, certainty, random);
+		} while (p.equals(q));
+
+		n = p.multiply(q);
+		nsquare = n.multiply(n);
+		t = tVal;
+		w = wVal;
+		delta = factorial(w);
+		combineFactor = delta.multiply(delta).shiftLeft(2).modInverse(n);
+
+		//d = 0 mod m, d = 1 mod n
+		BigInteger m = p.shiftRight(1).multiply(q.shiftRight(1));
+		BigInteger nm = n.multiply(m);
+		BigInteger d = m.multiply(m.modInverse(n));
+
+		BigInteger[] polynomial = new BigInteger[t];
+		polynomial[0] = d;
+		for (int k = 1; k < t; k++)
+			polynomial[k] = random.nextBigInteger(nm.bitLength() + 64).mod(nm);
+
+		shares = new KeyShare[w];
+		for (int i = 1; i <= w; i++) {
+
+			//Horner: f(i) mod n*m
+			BigInteger value = BigInteger.ZERO, x = BigInteger.valueOf(i);
+			for (int k = t - 1; k >= 0; k--)
+				value = value.multiply(x).add(polynomial[k]).mod(nm);
+
+			shares[i - 1] = new KeyShare(i, value.multiply(delta).shiftLeft(1), n);
+		}
+	}
+
+
+	/**
+	* public key only, as read from a stream.
+	*/
+
+	private ThresholdPaillier(BigInteger nVal, int tVal, int wVal) {
+
+		n = nVal;
+		nsquare = n.multiply(n);
+		t = tVal;
+		w = wVal;
+		delta = factorial(w);
+		combineFactor = delta.multiply(delta).shiftLeft(2).modInverse(n);
+		random = RandomnessProvider.secure();
+	}
+
+
+	/**
+	* @return the w shares made by the dealer; node i gets getShares()[i-1]
+	* @throws IllegalStateException if the key was read without shares
+	*/
+
+	public KeyShare[] getShares() {
+
+		if (shares == null)
+			throw new IllegalStateException("the shares are known to the dealer only");
+		return shares.clone();
+	}
+
+
+	/**
+	* Drops the dealer's copy of the shares once they are handed out.
+	*/
+
+	public void forgetShares() {
+
+		shares = null;
+	}
+
+
+	/**
+	* Encrypts plaintext m. c = (1+n)^m * r^n mod n^2 = (1 + m*n) * r^n mod n^2.
+	* @param m plaintext, 0 <= m < n
+	* @param r random number in Z*_n
+	* @return ciphertext
+	*/
+
+	public BigInteger Encryption(BigInteger m, BigInteger r) {
+
+		return BigInteger.ONE.add(m.multiply(n)).multiply(r.modPow(n, nsquare)).mod(nsquare);
+	}
+
+
+	/**
+	* Encrypts plaintext m with a random r of the key's randomness provider.
+	* @param m plaintext, 0 <= m < n
+	* @return ciphertext
+	*/
+
+	public BigInteger Encryption(BigInteger m) {
+
+		BigInteger r;
+		do {
+			r = random.nextBigInteger(n.bitLength()).mod(n);
+		} while (r.signum() == 0);
+		return Encryption(m, r);
+	}
+
+
+	/**
+	* Homomorphic addition: D(c1 * c2 mod n^2) = m1 + m2 mod n.
+	*/
+
+	public BigInteger HomomorphicAddition(BigInteger c1, BigInteger c2) {
+
+		return c1.multiply(c2).mod(nsquare);
+	}
+
+
+	/**
+	* Homomorphic multiplication by a plaintext: D(c^k mod n^2) = k * m mod n.
+	*/
+
+	public BigInteger HomomorphicMultiplication(BigInteger c, BigInteger k) {
+
+		return c.modPow(k, nsquare);
+	}
+
+
+	/**
+	* Combines the partial decryptions of one ciphertext.
+	* @param nodes indices of t distinct nodes, 1..w
+	* @param partials partials[j] is the partial decryption of node nodes[j]
+	* @return plaintext
+	*/
+
+	public BigInteger Combine(int[] nodes, BigInteger[] partials) {
+
+		if (partials.length != nodes.length)
+			throw new IllegalArgumentException(nodes.length + " nodes but " + partials.length + " partial decryptions");
+
+		return combine(coefficients(nodes), partials);
+	}
+
+
+	/**
+	* Combines the partial decryptions of a batch, in parallel.
+	* @param nodes indices of t distinct nodes, 1..w
+	* @param partials partials[j][k] is the partial decryption of ciphertext k by node nodes[j]
+	* @return plaintexts in ciphertext order
+	*/
+
+	public BigInteger[] Combine(int[] nodes, BigInteger[][] partials) {
+
+		if (partials.length != nodes.length)
+			throw new IllegalArgumentException(nodes.length + " nodes but " + partials.length + " partial decryptions");
+
+		BigInteger[] lambda = coefficients(nodes);
+		int count = partials[0].length;
+
+		BigInteger[] m = new BigInteger[count];
+		IntStream.range(0, count).parallel().forEach(k -> {
+			BigInteger[] column = new BigInteger[nodes.length];
+			for (int j = 0; j < nodes.length; j++)
+				column[j] = partials[j][k];
+			m[k] = combine(lambda, column);
+		});
+		return m;
+	}
+
+
+	/**
+	* Threshold decryption of a batch with t of the shares: every share
+	* decrypts the whole batch as one task on the executor, so the nodes
+	* run in parallel, then the batch is combined.
+	* @param c ciphertexts
+	* @param nodeShares t shares of distinct nodes
+	* @param executor runs the partial decryptions
+	* @return plaintexts in ciphertext order
+	*/
+
+	public BigInteger[] Decryption(BigInteger[] c, KeyShare[] nodeShares, ExecutorService executor) {
+
+		int[] nodes = new int[nodeShares.length];
+		List<Future<BigInteger[]>> futures = new ArrayList<Future<BigInteger[]>>();
+		for (int j = 0; j < nodeShares.length; j++) {
+			KeyShare share = nodeShares[j];
+			nodes[j] = share.getIndex();
+			futures.add(executor.submit(() -> share.PartialDecryption(c)));
+		}
+
+		BigInteger[][] partials = new BigInteger[nodeShares.length][];
+		try {
+			for (int j = 0; j < partials.length; j++)
+				partials[j] = futures.get(j).get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("threshold decryption interrupted", e);
+		} catch (ExecutionException e) {
+			throw new IllegalStateException("partial decryption failed", e.getCause());
+		}
+		return Combine(nodes, partials);
+	}
+
+
+	/**
+	* m = L(prod c_i^(2*lambda_i) mod n^2) * (4*delta^2)^(-1) mod n.
+	*/
+
+	private BigInteger combine(BigInteger[] lambda, BigInteger[] partials) {
+
+		BigInteger product = BigInteger.ONE;
+		for (int j = 0; j < partials.length; j++) {
+
+			//negative coefficients are applied to the inverse
+			BigInteger base = lambda[j].signum() < 0 ? partials[j].modInverse(nsquare) : partials[j];
+			product = product.multiply(base.modPow(lambda[j].abs(), nsquare)).mod(nsquare);
+		}
+		return product.subtract(BigInteger.ONE).divide(n).multiply(combineFactor).mod(n);
+	}
+
+
+	/**
+	* 2*lambda_i = 2*delta * prod_(j != i) j / (j - i) for a set of nodes,
+	* computed once per set.
+	*/
+
+	private BigInteger[] coefficients(int[] nodes) {
+
+		if (nodes.length != t)
+			throw new IllegalArgumentException("need exactly t = " + t + " nodes, got " + nodes.length);
+		for (int j = 0; j < nodes.length; j++) {
+			if (nodes[j] < 1 || nodes[j] > w)
+				throw new IllegalArgumentException("node " + nodes[j] + " outside 1.." + w);
+			for (int k = 0; k < j; k++)
+				if (nodes[j] == nodes[k])
+					throw new IllegalArgumentException("node " + nodes[j] + " given twice");
+		}
+
+		return coefficients.computeIfAbsent(Arrays.toString(nodes), set -> {
+			BigInteger[] lambda = new BigInteger[nodes.length];
+			for (int j = 0; j < nodes.length; j++) {
+				BigInteger numerator = delta.shiftLeft(1), denominator = BigInteger.ONE;
+				for (int k = 0; k < nodes.length; k++) {
+					if (k == j)
+						continue;
+					numerator = numerator.multiply(BigInteger.valueOf(nodes[k]));
+					denominator = denominator.multiply(BigInteger.valueOf(nodes[k] - nodes[j]));
+				}
+				//exact, since delta = w! is divisible by the denominator
+				lambda[j] = numerator.divide(denominator);
+			}
+			return lambda;
+		});
+	}
+
+
+	/**
+	* @return number of nodes needed to decrypt
+	*/
+
+	public int getThreshold() {
+		return t;
+	}
+
+
+	/**
+	* @return number of nodes
+	*/
+
+	public int getNodes() {
+		return w;
+	}
+
+
+	/**
+	* Writes the public key (n, t, w).
+	* @param out destination
+	* @throws IOException if the write fails
+	*/
+
+	public void write(DataOutput out) throws IOException {
+
+		writeNumber(out, n);
+		out.writeInt(t);
+		out.writeInt(w);
+	}
+
+
+	/**
+	* Reads a public key written by write(); it encrypts and combines,
+	* but has no shares.
+	* @param in source
+	* @return the public key
+	* @throws IOException if the read fails
+	*/
+
+	public static ThresholdPaillier read(DataInput in) throws IOException {
+
+		BigInteger n = readNumber(in);
+		int t = in.readInt(), w = in.readInt();
+		if (t < 1 || t > w)
+			throw new IOException("invalid threshold " + t + " of " + w);
+		return new ThresholdPaillier(n, t, w);
+	}
+
+
+	/**
+	* Safe prime p = 2p'+1 of the given bit length, p' and 2p'+1 sieved
+	* together, see PrimeGenerator.sophieGermain.
+	*/
+
+	private static BigInteger safePrime(int bits, int certainty, RandomnessProvider random) {
+
+		return PrimeGenerator.forSize(bits - 1, certainty).sophieGermain(random).shiftLeft(1).setBit(0);
+	}
+
+
+	private static BigInteger factorial(int k) {
+
+		BigInteger result = BigInteger.ONE;
+		for (int i = 2; i <= k; i++)
+			result = result.multiply(BigInteger.valueOf(i));
+		return result;
+	}
+
+
+	static void writeNumber(DataOutput out, BigInteger value) throws IOException {
+
+		byte[] bytes = value.toByteArray();
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+
+	static BigInteger readNumber(DataInput in) throws IOException {
+
+		int length = in.readInt();
+		if (length < 1 || length > 1 << 20)
+			throw new IOException("invalid number length " + length);
+		byte[] bytes = new byte[length];
+		in.readFully(bytes);
+		return new BigInteger(bytes);
+	}
+
+
+	/**
+	* The share of one node: its index and 2*delta*s_i. Holds no other
+	* secret, so one node alone cannot decrypt.
+	*/
+
+	public static class KeyShare {
+
+		private final int index;
+
+		/**
+		* 2*delta*s_i, the exponent of the partial decryption.
+		*/
+
+		private final BigInteger exponent;
+
+		private final BigInteger n, nsquare;
+
+
+		KeyShare(int indexVal, BigInteger exponentVal, BigInteger nVal) {
+
+			index = indexVal;
+			exponent = exponentVal;
+			n = nVal;
+			nsquare = n.multiply(n);
+		}
+
+
+		/**
+		* Partial decryption c^(2*delta*s_i) mod n^2.
+		* @param c ciphertext
+		* @return the partial decryption of this node
+		*/
+
+		public BigInteger PartialDecryption(BigInteger c) {
+
+			return c.modPow(exponent, nsquare);
+		}
+
+
+		/**
+		* Partial decryption of a batch, in parallel on the common fork/join pool.
+		* @param c ciphertexts
+		* @return partial decryptions in ciphertext order
+		*/
+
+		public BigInteger[] PartialDecryption(BigInteger[] c) {
+
+			return Arrays.stream(c).parallel().map(this::PartialDecryption).toArray(BigInteger[]::new);
+		}
+
+
+		/**
+		* @return node index, 1..w
+		*/
+
+		public int getIndex() {
+			return index;
+		}
+
+
+		/**
+		* Writes the share; the stream must be kept as secret as the share.
+		* @param out destination
+		* @throws IOException if the write fails
+		*/
+
+		public void write(DataOutput out) throws IOException {
+
+			out.writeInt(index);
+			writeNumber(out, exponent);
+			writeNumber(out, n);
+		}
+
+
+		/**
+		* @param in source
+		* @return a share written by write()
+		* @throws IOException if the read fails
+		*/
+
+		public static KeyShare read(DataInput in) throws IOException {
+
+			int index = in.readInt();
+			BigInteger exponent = readNumber(in);
+			BigInteger n = readNumber(in);
+			if (index < 1 || n.signum() <= 0)
+				throw new IOException("invalid share");
+			return new KeyShare(index, exponent, n);
+		}
+	}
+}
@@ -0,0 +1,237 @@
+/*
+* Throughput of t-of-w threshold decryption against single-node decryption,
+* and a file-based mode to run the nodes as separate processes.
+*
+*      java ThresholdPaillierDemo [bits 1024] [batch 64] [t 3] [w 5]
+*
+* deals a key, encrypts a batch and measures decryptions per second of
+*
+*      - Paillier.Decryption and Paillier.CRTDecryption on one node,
+*      - ThresholdPaillier.Decryption with t in-process nodes, every node a
+*        thread of its own, and the share of it spent in Combine.
+*
+* Separate processes, one node per process:
+*
+*      java ThresholdPaillierDemo deal    DIR bits t w    writes DIR/public.key and DIR/share-i.key
+*      java ThresholdPaillierDemo encrypt DIR             plaintexts (stdin) -> ciphertexts (stdout)
+*      java ThresholdPaillierDemo partial DIR i           ciphertexts (stdin) -> partials of node i (stdout)
+*      java ThresholdPaillierDemo combine DIR i,j,.. FILE_i FILE_j ..
+*                                                       partials of the nodes -> plaintexts (stdout)
+*
+* Numbers are decimal, one per line.
+*
+*/
+
+//used for mathematical operation
+import java.math.BigInteger;
+
+//perform input and output stuff
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+//used for Arrays implementation
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+//in-process nodes
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+
+public class ThresholdPaillierDemo {
+
+	private static final int CERTAINTY = 64;
+
+
+	public static void main(String[] args) throws IOException {
+
+		if (args.length > 0 && !Character.isDigit(args[0].charAt(0))) {
+			processes(args);
+			return;
+		}
+
+		int bits = args.length > 0 ? Integer.parseInt(args[0]) : 1024;
+		int batch = args.length > 1 ? Integer.parseInt(args[1]) : 64;
+		int t = args.length > 2 ? Integer.parseInt(args[2]) : 3;
+		int w = args.length > 3 ? Integer.parseInt(args[3]) : 5;
+
+		long begin = System.nanoTime();
+		ThresholdPaillier threshold = new ThresholdPaillier(bits, t, w, CERTAINTY);
+		System.out.printf("dealt %d-of-%d key, |n| = %d, in %.1f s%n", t, w, bits, (System.nanoTime() - begin) / 1e9);
+
+		Paillier single = new Paillier(bits, CERTAINTY);
+
+		BigInteger[] m = new BigInteger[batch], c = new BigInteger[batch], sc = new BigInteger[batch];
+		for (int i = 0; i < batch; i++) {
+			m[i] = BigInteger.valueOf(i * 1000003L);
+			c[i] = threshold.Encryption(m[i]);
+			sc[i] = single.Encryption(m[i]);
+		}
+
+		//any t of the w nodes, here the last t
+		ThresholdPaillier.KeyShare[] shares = Arrays.copyOfRange(threshold.getShares(), w - t, w);
+		int[] nodes = new int[t];
+		for (int j = 0; j < t; j++)
+			nodes[j] = shares[j].getIndex();
+
+		ExecutorService executor = Executors.newFixedThreadPool(t, runnable -> {
+			Thread thread = new Thread(runnable, "threshold-node");
+			thread.setDaemon(true);
+			return thread;
+		});
+
+		try {
+			//warm up, and check every path once
+			for (int round = 0; round < 2; round++) {
+				check(m, threshold.Decryption(c, shares, executor), "threshold");
+				for (int i = 0; i < batch; i++) {
+					check(m[i], single.Decryption(sc[i]), "Decryption");
+					check(m[i], single.CRTDecryption(sc[i]), "CRTDecryption");
+				}
+			}
+
+			System.out.printf("cores %d, batch %d%n", Runtime.getRuntime().availableProcessors(), batch);
+
+			begin = System.nanoTime();
+			for (int i = 0; i < batch; i++)
+				single.Decryption(sc[i]);
+			report("single node Decryption", batch, System.nanoTime() - begin);
+
+			begin = System.nanoTime();
+			for (int i = 0; i < batch; i++)
+				single.CRTDecryption(sc[i]);
+			report("single node CRTDecryption", batch, System.nanoTime() - begin);
+
+			begin = System.nanoTime();
+			threshold.Decryption(c, shares, executor);
+			report(t + "-of-" + w + " threshold Decryption", batch, System.nanoTime() - begin);
+
+			BigInteger[][] partials = new BigInteger[t][];
+			for (int j = 0; j < t; j++)
+				partials[j] = shares[j].PartialDecryption(c);
+
+			begin = System.nanoTime();
+			threshold.Combine(nodes, partials);
+			report("  of which Combine", batch, System.nanoTime() - begin);
+
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+
+	private static void report(String name, int count, long nanos) {
+
+		System.out.printf("%-34s %10.1f decryptions/s %10.3f ms each%n", name, count * 1e9 / nanos, nanos / 1e6 / count);
+	}
+
+
+	private static void check(BigInteger[] expected, BigInteger[] actual, String name) {
+
+		for (int i = 0; i < expected.length; i++)
+			check(expected[i], actual[i], name);
+	}
+
+
+	private static void check(BigInteger expected, BigInteger actual, String name) {
+
+		if (!expected.equals(actual))
+			throw new IllegalStateException(name + " decrypted " + actual + " instead of " + expected);
+	}
+
+
+	/**
+	* the commands that run one node per process.
+	*/
+
+	private static void processes(String[] args) throws IOException {
+
+		if (args.length < 2)
+			throw new IllegalArgumentException("usage: deal|encrypt|partial|combine DIR ...");
+
+		Path dir = Paths.get(args[1]);
+		Path publicKey = dir.resolve("public.key");
+
+		switch (args[0]) {
+
+			case "deal": {
+				ThresholdPaillier key = new ThresholdPaillier(Integer.parseInt(args[2]), Integer.parseInt(args[3]),
+						Integer.parseInt(args[4]), CERTAINTY);
+				Files.createDirectories(dir);
+				try (DataOutputStream out = new DataOutputStream(Files.newOutputStream(publicKey))) {
+					key.write(out);
+				}
+				for (ThresholdPaillier.KeyShare share : key.getShares())
+					try (DataOutputStream out = new DataOutputStream(
+							Files.newOutputStream(dir.resolve("share-" + share.getIndex() + ".key")))) {
+						share.write(out);
+					}
+				key.forgetShares();
+				break;
+			}
+
+			case "encrypt": {
+				ThresholdPaillier key = readPublic(publicKey);
+				for (BigInteger m : readNumbers(new BufferedReader(new InputStreamReader(System.in))))
+					System.out.println(key.Encryption(m));
+				break;
+			}
+
+			case "partial": {
+				ThresholdPaillier.KeyShare share;
+				try (DataInputStream in = new DataInputStream(Files.newInputStream(dir.resolve("share-" + args[2] + ".key")))) {
+					share = ThresholdPaillier.KeyShare.read(in);
+				}
+				List<BigInteger> c = readNumbers(new BufferedReader(new InputStreamReader(System.in)));
+				for (BigInteger partial : share.PartialDecryption(c.toArray(new BigInteger[0])))
+					System.out.println(partial);
+				break;
+			}
+
+			case "combine": {
+				ThresholdPaillier key = readPublic(publicKey);
+				int[] nodes = Arrays.stream(args[2].split(",")).mapToInt(Integer::parseInt).toArray();
+				if (args.length != 3 + nodes.length)
+					throw new IllegalArgumentException("one partial file per node is required");
+
+				BigInteger[][] partials = new BigInteger[nodes.length][];
+				for (int j = 0; j < nodes.length; j++)
+					try (BufferedReader in = Files.newBufferedReader(Paths.get(args[3 + j]))) {
+						partials[j] = readNumbers(in).toArray(new BigInteger[0]);
+					}
+				for (BigInteger m : key.Combine(nodes, partials))
+					System.out.println(m);
+				break;
+			}
+
+			default:
+				throw new IllegalArgumentException("unknown command " + args[0]);
+		}
+	}
+
+
+	private static ThresholdPaillier readPublic(Path file) throws IOException {
+
+		try (DataInputStream in = new DataInputStream(Files.newInputStream(file))) {
+			return ThresholdPaillier.read(in);
+		}
+	}
+
+
+	private static List<BigInteger> readNumbers(BufferedReader in) throws IOException {
+
+		List<BigInteger> numbers = new ArrayList<BigInteger>();
+		String line;
+		while ((line = in.readLine()) != null)
+			if (!line.trim().isEmpty())
+				numbers.add(new BigInteger(line.trim()));
+		return numbers;
+	}
+}